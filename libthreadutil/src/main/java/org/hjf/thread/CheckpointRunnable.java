@@ -0,0 +1,28 @@
+package org.hjf.thread;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * 可保存输出结果的任务，配合 {@link MeshTask#setCheckpointFile(java.io.File)} 使用
+ * <p>
+ * 任务完成后 {@link #saveOutput()} 的结果会写入断点记录；
+ * 恢复运行时此任务不再执行，而是通过 {@link #restoreOutput(byte[])} 还原输出结果，供下节点任务使用
+ */
+public interface CheckpointRunnable extends Runnable {
+
+    /**
+     * 任务完成后调用，序列化输出结果
+     *
+     * @return 输出结果，没有输出时返回 null
+     */
+    @Nullable
+    byte[] saveOutput();
+
+    /**
+     * 恢复运行时代替 {@link #run()} 调用，还原上次运行的输出结果
+     *
+     * @param output {@link #saveOutput()} 保存的输出结果
+     */
+    void restoreOutput(@NonNull byte[] output);
+}
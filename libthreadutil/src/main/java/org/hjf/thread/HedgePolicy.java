@@ -0,0 +1,112 @@
+package org.hjf.thread;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对冲（推测）执行策略，用于长尾延迟明显的节点任务（如网络请求）
+ * <p>
+ * 节点任务运行超过自身历史耗时的指定百分位后，在线程池中再启动一个副本，先完成的副本激活下节点任务，另一个副本被中断。
+ * 对冲副本受线程池预算限制，不会占满线程池。
+ * <p>
+ * 耗时记录保存在策略对象中，同一个节点任务多次运行（如每次同步都重新创建 {@link MeshTask}）时应复用同一个策略对象
+ */
+public final class HedgePolicy {
+
+    /**
+     * 保留最近多少次耗时记录
+     */
+    private static final int HISTORY_SIZE = 100;
+
+    /**
+     * 默认至少记录多少次耗时后才开始对冲
+     */
+    private static final int DEFAULT_MIN_SAMPLE_COUNT = 10;
+
+    /**
+     * 默认最小对冲延迟（毫秒）
+     */
+    private static final long DEFAULT_MIN_DELAY_MILLIS = 10;
+
+    /**
+     * 耗时百分位，(0, 100]
+     */
+    private final float percentile;
+
+    /**
+     * 至少记录多少次耗时后才开始对冲，记录太少时百分位不准确
+     */
+    private final int minSampleCount;
+
+    /**
+     * 最小对冲延迟（微秒），耗时很短的节点任务历史耗时百分位接近 0，不设下限时会立即对冲，白白占用线程池
+     */
+    private final long minDelayMicros;
+
+    /**
+     * 最近的耗时记录（微秒），环形数组
+     */
+    private final long[] latencyHistory = new long[HISTORY_SIZE];
+    private int latencyCount = 0;
+    private int latencyIndex = 0;
+
+    /**
+     * @param percentile 耗时百分位，如 95：运行超过历史耗时 p95 后启动对冲副本
+     */
+    public HedgePolicy(float percentile) {
+        this(percentile, DEFAULT_MIN_SAMPLE_COUNT);
+    }
+
+    /**
+     * @param percentile     耗时百分位，如 95：运行超过历史耗时 p95 后启动对冲副本
+     * @param minSampleCount 至少记录多少次耗时后才开始对冲
+     */
+    public HedgePolicy(float percentile, int minSampleCount) {
+        this(percentile, minSampleCount, DEFAULT_MIN_DELAY_MILLIS);
+    }
+
+    /**
+     * @param percentile     耗时百分位，如 95：运行超过历史耗时 p95 后启动对冲副本
+     * @param minSampleCount 至少记录多少次耗时后才开始对冲
+     * @param minDelayMillis 最小对冲延迟（毫秒），历史耗时百分位低于此值时按此值延迟
+     */
+    public HedgePolicy(float percentile, int minSampleCount, long minDelayMillis) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100], but is " + percentile + ".");
+        }
+        this.percentile = percentile;
+        if (minDelayMillis < 0) {
+            throw new IllegalArgumentException("minDelayMillis must be >= 0, but is " + minDelayMillis + ".");
+        }
+        this.minSampleCount = Math.max(1, Math.min(minSampleCount, HISTORY_SIZE));
+        this.minDelayMicros = TimeUnit.MILLISECONDS.toMicros(minDelayMillis);
+    }
+
+    /**
+     * 记录一次节点任务耗时
+     *
+     * @param latencyMicros 耗时（微秒）
+     */
+    synchronized void recordLatency(long latencyMicros) {
+        latencyHistory[latencyIndex] = latencyMicros;
+        latencyIndex = (latencyIndex + 1) % HISTORY_SIZE;
+        if (latencyCount < HISTORY_SIZE) {
+            latencyCount++;
+        }
+    }
+
+    /**
+     * 获取启动对冲副本的延迟
+     *
+     * @return 延迟（微秒），不小于最小对冲延迟；耗时记录不足时返回 -1，不对冲
+     */
+    synchronized long getHedgeDelayMicros() {
+        if (latencyCount < minSampleCount) {
+            return -1;
+        }
+        long[] sortedLatency = Arrays.copyOf(latencyHistory, latencyCount);
+        Arrays.sort(sortedLatency);
+        int index = (int) Math.ceil(percentile / 100 * latencyCount) - 1;
+        return Math.max(minDelayMicros, sortedLatency[Math.max(0, Math.min(index, latencyCount - 1))]);
+    }
+}
@@ -0,0 +1,216 @@
+package org.hjf.thread;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.hjf.log.LogUtil;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对冲执行的节点任务，见 {@link HedgePolicy}
+ * <p>
+ * 主副本在线程池中正常运行，同时定时；超过 {@link HedgePolicy#getHedgeDelayMicros()} 仍未完成时，
+ * 在线程池预算允许的情况下启动一个对冲副本。先成功完成的副本通知任务组激活下节点任务，另一个副本被中断，
+ * 其结束后不再通知任务组；两个副本都失败时才通知任务组失败。
+ * <p>
+ * 注意：两个副本运行的是同一个 {@link Runnable} 对象，需要能够并发执行并响应中断
+ */
+class HedgedRunPoint extends RunPoint {
+
+    private final HedgePolicy hedgePolicy;
+
+    /**
+     * 主副本开始运行的时间
+     */
+    private long startNanos;
+
+    /**
+     * 主副本所在的线程池，对冲副本提交到同一个线程池；主副本在调用线程中运行时为 null
+     */
+    @Nullable
+    private ThreadPoolExecutor primaryPool;
+
+    /**
+     * 已有副本成功完成或全部失败，guarded by this
+     */
+    private boolean isFinished = false;
+
+    /**
+     * 运行中的副本数，guarded by this
+     */
+    private int runningAttemptCount = 0;
+
+    /**
+     * 运行中的副本所在线程，用于中断输掉的副本，guarded by this
+     */
+    @Nullable
+    private Thread primaryThread;
+    @Nullable
+    private Thread hedgeThread;
+
+    /**
+     * 对冲副本是否已提交到线程池，guarded by this
+     */
+    private boolean isHedgeSubmitted = false;
+
+    /**
+     * 对冲副本提交到的线程池，用于移除排队中的对冲副本，guarded by this
+     */
+    @Nullable
+    private ThreadPoolExecutor hedgePool;
+
+    @Nullable
+    private ScheduledFuture<?> hedgeTimer;
+
+    /**
+     * 对冲副本
+     */
+    private final Runnable hedgeAttempt = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                runAttempt(true);
+            } finally {
+                ThreadPoolExecutor.releaseHedge();
+            }
+        }
+    };
+
+    /**
+     * 定时到达，启动对冲副本
+     */
+    private final Runnable hedgeStarter = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (HedgedRunPoint.this) {
+                if (isFinished || isCancelled()) {
+                    return;
+                }
+            }
+            // 线程池已销毁时申请失败，不会重新创建线程池
+            ThreadPoolExecutor pool = primaryPool != null ? primaryPool : ThreadPoolExecutor.getInstance();
+            if (!pool.tryAcquireHedge()) {
+                LogUtil.v("runnable【{0}】 hedge skipped, no budget.", getName());
+                return;
+            }
+            try {
+                synchronized (HedgedRunPoint.this) {
+                    isHedgeSubmitted = true;
+                    hedgePool = pool;
+                }
+                LogUtil.v("runnable【{0}】 start hedge.", getName());
+                pool.execute(hedgeAttempt);
+            } catch (RejectedExecutionException e) {
+                synchronized (HedgedRunPoint.this) {
+                    isHedgeSubmitted = false;
+                    hedgePool = null;
+                }
+                ThreadPoolExecutor.releaseHedge();
+            }
+        }
+    };
+
+    HedgedRunPoint(@NonNull String runnableName, @NonNull Runnable runnable, @NonNull HedgePolicy hedgePolicy) {
+        super(runnableName, runnable);
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    @Override
+    public void run() {
+        if (isCancelled()) {
+            LogUtil.v("runnable【{0}】 is cancelled.", getName());
+            return;
+        }
+        startNanos = System.nanoTime();
+        primaryPool = ThreadPoolExecutor.currentPool();
+        long hedgeDelayMicros = hedgePolicy.getHedgeDelayMicros();
+        if (hedgeDelayMicros >= 0) {
+            hedgeTimer = ThreadPoolExecutor.getScheduler().schedule(hedgeStarter, hedgeDelayMicros, TimeUnit.MICROSECONDS);
+        }
+        runAttempt(false);
+    }
+
+    /**
+     * 运行一个副本
+     *
+     * @param isHedge true: 对冲副本；false: 主副本
+     */
+    private void runAttempt(boolean isHedge) {
+        synchronized (this) {
+            if (isFinished || isCancelled()) {
+                return;
+            }
+            runningAttemptCount++;
+            if (isHedge) {
+                hedgeThread = Thread.currentThread();
+            } else {
+                primaryThread = Thread.currentThread();
+            }
+        }
+
+        Throwable failure = null;
+        try {
+            onPreRun();
+            onRun();
+        } catch (Throwable throwable) {
+            failure = throwable;
+        }
+
+        boolean isWinner = false;
+        boolean isAllFailed = false;
+        ThreadPoolExecutor pool;
+        synchronized (this) {
+            runningAttemptCount--;
+            if (isHedge) {
+                hedgeThread = null;
+                isHedgeSubmitted = false;
+            } else {
+                primaryThread = null;
+            }
+            // 先完成的副本获胜，中断另一个副本
+            if (!isFinished && failure == null) {
+                isFinished = true;
+                isWinner = true;
+                interruptAttempt(primaryThread);
+                interruptAttempt(hedgeThread);
+            }
+            // 没有其他副本运行中或排队中时才算失败
+            else if (!isFinished && runningAttemptCount == 0 && !isHedgeSubmitted) {
+                isFinished = true;
+                isAllFailed = true;
+            }
+            pool = hedgePool;
+        }
+        // 清除输掉时被中断的状态，避免影响线程池中的下个任务
+        Thread.interrupted();
+
+        if (isWinner || isAllFailed) {
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+            // 还在排队中的对冲副本移出其所在的线程池，线程池已销毁时不会重新创建
+            if (pool != null && pool.remove(hedgeAttempt)) {
+                ThreadPoolExecutor.releaseHedge();
+            }
+        }
+        if (isWinner) {
+            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+            hedgePolicy.recordLatency(latencyMicros);
+            LogUtil.v("runnable【{0}】 {1} attempt win, latency {2}us.", getName(), isHedge ? "hedge" : "primary", latencyMicros);
+            notifyRunnableComplete();
+        } else if (isAllFailed) {
+            notifyRunnableFailed(failure);
+        } else {
+            LogUtil.v("runnable【{0}】 {1} attempt lose.", getName(), isHedge ? "hedge" : "primary");
+        }
+    }
+
+    private static void interruptAttempt(@Nullable Thread thread) {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.hjf.thread;
+
+import java.util.NoSuchElementException;
+
+/**
+ * int 先进先出队列（环形数组），满了自动扩容，避免大量节点 id 装箱
+ * <p>
+ * 非线程安全，由调用方加锁
+ */
+final class IntQueue {
+
+    private final int initialCapacity;
+
+    private int[] elements;
+    private int head = 0;
+    private int size = 0;
+
+    IntQueue(int initialCapacity) {
+        this.initialCapacity = Math.max(1, initialCapacity);
+        this.elements = new int[this.initialCapacity];
+    }
+
+    /**
+     * 加入队尾
+     */
+    void push(int value) {
+        if (size == elements.length) {
+            int[] newElements = new int[size * 2];
+            for (int i = 0; i < size; i++) {
+                newElements[i] = elements[(head + i) % size];
+            }
+            elements = newElements;
+            head = 0;
+        }
+        elements[(head + size) % elements.length] = value;
+        size++;
+    }
+
+    /**
+     * @return 队首元素，不移出
+     */
+    int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException("IntQueue is empty.");
+        }
+        return elements[head];
+    }
+
+    /**
+     * 移出并返回队首元素
+     */
+    int poll() {
+        int value = peek();
+        head = (head + 1) % elements.length;
+        size--;
+        return value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 清空队列，扩容后的数组一并释放
+     */
+    void clear() {
+        elements = new int[initialCapacity];
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * @return 当前数组容量
+     */
+    int capacity() {
+        return elements.length;
+    }
+}
@@ -6,6 +6,8 @@ import android.support.annotation.NonNull;
 
 import org.hjf.log.LogUtil;
 
+import java.util.concurrent.ExecutionException;
+
 /**
  * 链式任务，按添加顺序往下执行
  */
@@ -13,9 +15,9 @@ public class LinkTask {
 
     private Handler handler = new Handler(Looper.getMainLooper());
     /**
-     * 上个 Task 的唯一标识
+     * 上个 Task 的节点 id
      */
-    private String agoTaskTag = MeshTask.TOP_TASK_TAG;
+    private int agoTaskId = MeshTask.TOP_TASK_ID;
 
     /**
      * “可交叉式多叉树结构” 异步任务
@@ -36,8 +38,7 @@ public class LinkTask {
      */
     public LinkTask addRunnable(Runnable runnable) {
         String taskName = String.valueOf(++runnableIndex);
-        meshTask.addRunnable(taskName, runnable, agoTaskTag);
-        agoTaskTag = taskName;
+        agoTaskId = meshTask.addRunPoint(new RunPoint(taskName, runnable), agoTaskId);
         return this;
     }
 
@@ -48,17 +49,25 @@ public class LinkTask {
     public LinkTask addRunnableInUIThread(final Runnable runnable) {
         String taskName = String.valueOf(++runnableIndex);
         RunPoint runPoint = new MainThreadRunPoint(taskName, runnable, handler);
-        meshTask.addRunPoint(runPoint, agoTaskTag);
-        agoTaskTag = taskName;
+        agoTaskId = meshTask.addRunPoint(runPoint, agoTaskId);
         return this;
     }
 
 
     /**
      * 执行
+     *
+     * @return 完成句柄，见 {@link MeshTask#execute()}
+     */
+    public MeshFuture execute() {
+        return meshTask.execute();
+    }
+
+    /**
+     * 执行并阻塞等待所有任务完成，见 {@link MeshTask#executeAndWait()}
      */
-    public void execute() {
-        meshTask.execute();
+    public void executeAndWait() throws InterruptedException, ExecutionException {
+        meshTask.executeAndWait();
     }
 
 
@@ -81,8 +90,13 @@ public class LinkTask {
                 @Override
                 public void run() {
                     LogUtil.v("MainThreadRunPoint{0} to run.", MainThreadRunPoint.super.getName());
-                    MainThreadRunPoint.super.runnable.run();
-                    LogUtil.v("MainThreadRunPoint{0} complete.", MainThreadRunPoint.super.getName());
+                    try {
+                        MainThreadRunPoint.super.runnable.run();
+                        LogUtil.v("MainThreadRunPoint{0} complete.", MainThreadRunPoint.super.getName());
+                    } catch (Throwable throwable) {
+                        // 主线程中的异常交给任务组处理，不让主线程崩溃
+                        MainThreadRunPoint.super.setFailure(throwable);
+                    }
                     MainThreadRunPoint.super.setFlag(RunnableFlag.NEXT);
                 }
             });
@@ -0,0 +1,22 @@
+package org.hjf.thread;
+
+/**
+ * 可管理的阻塞操作，配合 {@link ThreadUtil#managedBlock(ManagedBlocker)} 使用
+ * <p>
+ * 线程池中的任务即将阻塞（等待嵌套的 {@link MeshTask}、等待 {@link RunnableFlag#WAIT} 标记等）时，
+ * 先告知线程池，线程池临时补偿一个工作线程，避免有限的线程被阻塞任务占满而饿死/死锁
+ */
+public interface ManagedBlocker {
+
+    /**
+     * 执行阻塞操作，可以阻塞一段时间后返回，会被循环调用直到 {@link #isReleasable()} 为 true
+     *
+     * @return true: 不需要再阻塞
+     */
+    boolean block() throws InterruptedException;
+
+    /**
+     * @return true: 不需要阻塞
+     */
+    boolean isReleasable();
+}
@@ -0,0 +1,219 @@
+package org.hjf.thread;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.hjf.log.LogUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link MeshTask#execute()} 返回的完成句柄
+ * <p>
+ * 最后一个节点任务完成时立即完成；任一节点任务失败时以该异常完成，并取消剩余的节点任务。
+ * 节点任务是 {@link Runnable}，没有返回值，所以结果固定为 null
+ * <p>
+ * 可以通过 {@link #addOnCompleteListener(OnMeshCompleteListener)} 串联其他任务，不需要阻塞线程等待
+ */
+public final class MeshFuture implements Future<Void> {
+
+    /**
+     * 所属的任务组，用于取消剩余节点任务
+     */
+    @Nullable
+    private MeshTask meshTask;
+
+    private boolean isDone = false;
+
+    private boolean isCancelled = false;
+
+    /**
+     * 失败原因，成功完成时为 null
+     */
+    @Nullable
+    private Throwable failure;
+
+    /**
+     * 完成回调，完成后清空
+     */
+    @Nullable
+    private List<OnMeshCompleteListener> listenerList;
+
+    MeshFuture(@NonNull MeshTask meshTask) {
+        this.meshTask = meshTask;
+    }
+
+    /**
+     * 添加完成回调，已完成时在当前线程立即回调
+     *
+     * @param listener {@link OnMeshCompleteListener}
+     */
+    public MeshFuture addOnCompleteListener(@NonNull OnMeshCompleteListener listener) {
+        synchronized (this) {
+            if (!isDone) {
+                if (listenerList == null) {
+                    listenerList = new ArrayList<>();
+                }
+                listenerList.add(listener);
+                return this;
+            }
+        }
+        notifyListener(listener);
+        return this;
+    }
+
+    /**
+     * 所有节点任务已成功完成
+     */
+    void complete() {
+        finish(null, false);
+    }
+
+    /**
+     * 节点任务执行失败
+     */
+    void completeExceptionally(@NonNull Throwable throwable) {
+        finish(throwable, false);
+    }
+
+    /**
+     * 取消剩余的节点任务，已经在运行中的节点任务会继续执行完，但不会再激活下节点任务
+     *
+     * @param mayInterruptIfRunning 不支持中断正在运行的节点任务，忽略此参数
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        MeshTask task;
+        synchronized (this) {
+            if (isDone) {
+                return false;
+            }
+            task = meshTask;
+        }
+        if (task != null) {
+            task.cancel();
+        }
+        return finish(new CancellationException("MeshTask is cancelled."), true);
+    }
+
+    /**
+     * 完成并回调
+     *
+     * @return false: 已经完成过了
+     */
+    private boolean finish(@Nullable Throwable throwable, boolean isCancel) {
+        List<OnMeshCompleteListener> listeners;
+        synchronized (this) {
+            if (isDone) {
+                return false;
+            }
+            isDone = true;
+            isCancelled = isCancel;
+            failure = throwable;
+            listeners = listenerList;
+            listenerList = null;
+            meshTask = null;
+            notifyAll();
+        }
+        if (listeners != null) {
+            for (OnMeshCompleteListener listener : listeners) {
+                notifyListener(listener);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 回调在线程池的工作线程中执行，回调抛出的异常不能抛给线程池，否则在 Android 上会导致应用崩溃
+     */
+    private void notifyListener(@NonNull OnMeshCompleteListener listener) {
+        try {
+            if (failure == null) {
+                listener.onComplete();
+            } else {
+                listener.onFailure(failure);
+            }
+        } catch (Throwable throwable) {
+            LogUtil.v("OnMeshCompleteListener {0} throw exception: {1}", listener, throwable);
+            throwable.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return isCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return isDone;
+    }
+
+    /**
+     * 阻塞等待完成，在线程池的工作线程中等待时，线程池会补偿工作线程
+     */
+    @Override
+    public Void get() throws InterruptedException, ExecutionException {
+        ThreadPoolExecutor.managedBlock(new ManagedBlocker() {
+
+            @Override
+            public boolean block() throws InterruptedException {
+                synchronized (MeshFuture.this) {
+                    if (!isDone) {
+                        MeshFuture.this.wait();
+                    }
+                    return isDone;
+                }
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return isDone();
+            }
+        });
+        return getResult();
+    }
+
+    @Override
+    public Void get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        ThreadPoolExecutor.managedBlock(new ManagedBlocker() {
+
+            @Override
+            public boolean block() throws InterruptedException {
+                synchronized (MeshFuture.this) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (!isDone && remainingNanos > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(MeshFuture.this, remainingNanos);
+                    }
+                    return isDone || deadline - System.nanoTime() <= 0;
+                }
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return isDone() || deadline - System.nanoTime() <= 0;
+            }
+        });
+        if (!isDone()) {
+            throw new TimeoutException("MeshTask is not complete in " + timeout + " " + unit + ".");
+        }
+        return getResult();
+    }
+
+    private synchronized Void getResult() throws ExecutionException {
+        if (isCancelled) {
+            throw (CancellationException) failure;
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,369 @@
+package org.hjf.thread;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import org.hjf.log.LogUtil;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MeshTask} 断点记录，只追加写入的本地文件，记录已完成的节点 id 及其输出结果
+ * <p>
+ * 文件格式：
+ * 头部：int 魔数，int 节点数，long 任务组指纹（节点名称及连接关系的哈希）
+ * 记录：int 节点 id，int 输出长度（-1 表示没有输出），byte[] 输出
+ * <p>
+ * 记录先写入内存缓冲，攒够一批，或缓冲中第一条记录写入 {@link #FLUSH_DELAY_MILLIS} 后，
+ * 交给单独的写入线程写文件，不占用线程池，不阻塞节点任务；
+ * 进程被杀时最多丢失最近 {@link #FLUSH_DELAY_MILLIS} 内（且不超过一批）完成的记录，丢失的节点恢复后重新运行
+ */
+class MeshJournal {
+
+    private static final int MAGIC = 0x4D455348;
+
+    /**
+     * 缓冲多少条记录后写一次文件
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * 记录最多在缓冲中停留多久，节点少、耗时长的任务组攒不够一批时也能及时写入
+     */
+    private static final long FLUSH_DELAY_MILLIS = 200;
+
+    /**
+     * 所有断点记录共用的写入线程
+     */
+    private static ScheduledExecutorService writeExecutor;
+
+    private final File file;
+
+    /**
+     * 上次运行已完成的节点，下标即节点 id
+     */
+    @Nullable
+    private boolean[] completedFlags;
+
+    /**
+     * 上次运行已完成节点的输出结果，下标即节点 id
+     */
+    @Nullable
+    private byte[][] outputs;
+
+    /**
+     * 待写入的记录，guarded by this
+     */
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private DataOutputStream bufferOutput = new DataOutputStream(buffer);
+    private int bufferRecordCount = 0;
+    private boolean isWriteScheduled = false;
+    private boolean isFlushScheduled = false;
+
+    /**
+     * 写入线程持有的文件流，只在写入线程中使用
+     */
+    @Nullable
+    private FileOutputStream fileOutput;
+
+    /**
+     * 任务组已结束，不再写文件，只在写入线程中使用
+     */
+    private boolean isFinished = false;
+
+    /**
+     * 写文件出错后不再记录
+     */
+    private volatile boolean isBroken = false;
+
+    MeshJournal(@NonNull File file) {
+        this.file = file;
+    }
+
+    private static synchronized ScheduledExecutorService getWriteExecutor() {
+        if (writeExecutor == null) {
+            writeExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "MeshJournal");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return writeExecutor;
+    }
+
+    /**
+     * 读取上次运行的记录，节点数或任务组指纹不一致（任务组变了）时丢弃记录重新开始
+     * 读取后截掉文件末尾不完整的记录，之后的记录继续追加
+     *
+     * @param nodeCount   当前任务组的节点数
+     * @param fingerprint 当前任务组的指纹
+     */
+    void open(int nodeCount, long fingerprint) {
+        awaitPendingWrite();
+        completedFlags = new boolean[nodeCount];
+        outputs = new byte[nodeCount][];
+        long validLength = 0;
+        if (file.exists()) {
+            try {
+                validLength = load(nodeCount, fingerprint);
+            } catch (Throwable throwable) {
+                // 记录损坏时丢弃重新开始，不能让任务组失败，否则保留下来的记录会让之后每次执行都失败
+                LogUtil.v("MeshJournal {0} is broken, discard. {1}", file, throwable);
+                throwable.printStackTrace();
+                completedFlags = new boolean[nodeCount];
+                outputs = new byte[nodeCount][];
+                validLength = 0;
+            }
+        }
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(validLength);
+                if (validLength == 0) {
+                    randomAccessFile.writeInt(MAGIC);
+                    randomAccessFile.writeInt(nodeCount);
+                    randomAccessFile.writeLong(fingerprint);
+                }
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            isBroken = true;
+        }
+    }
+
+    /**
+     * 等待写入线程中已提交的写入完成，同一进程中失败后重新执行时，保证读到上次运行的所有记录
+     */
+    @VisibleForTesting
+    static void awaitPendingWrite() {
+        ScheduledExecutorService executor;
+        synchronized (MeshJournal.class) {
+            executor = writeExecutor;
+        }
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return 有效记录的文件长度，0 表示没有有效记录
+     */
+    private long load(int nodeCount, long fingerprint) {
+        long fileLength = file.length();
+        long validLength = 0;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != nodeCount || input.readLong() != fingerprint) {
+                LogUtil.v("MeshJournal {0} does not match the MeshTask, discard.", file);
+                return 0;
+            }
+            validLength = 16;
+            while (true) {
+                int id = input.readInt();
+                int length = input.readInt();
+                // 长度超出文件剩余字节数的记录是写了一半的记录或垃圾数据，不能按其长度分配内存
+                if (id < 0 || id >= nodeCount || length < -1 || length > fileLength - validLength - 8) {
+                    break;
+                }
+                byte[] output = null;
+                if (length >= 0) {
+                    output = new byte[length];
+                    input.readFully(output);
+                }
+                completedFlags[id] = true;
+                outputs[id] = output;
+                validLength += 8 + Math.max(length, 0);
+            }
+        } catch (EOFException e) {
+            // 文件末尾，或进程被杀时写了一半的记录
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return validLength;
+    }
+
+    /**
+     * @return true: 上次运行已完成此节点
+     */
+    boolean isCompleted(int id) {
+        return completedFlags != null && completedFlags[id];
+    }
+
+    /**
+     * 取出上次运行的输出结果，取出后释放
+     */
+    @Nullable
+    byte[] takeOutput(int id) {
+        if (outputs == null) {
+            return null;
+        }
+        byte[] output = outputs[id];
+        outputs[id] = null;
+        return output;
+    }
+
+    /**
+     * 恢复完成，释放上次运行的记录
+     */
+    void releaseRestored() {
+        completedFlags = null;
+        outputs = null;
+    }
+
+    /**
+     * 记录节点完成，攒够一批后写文件
+     *
+     * @param id     节点 id
+     * @param output 输出结果
+     */
+    void append(int id, @Nullable byte[] output) {
+        if (isBroken) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                bufferOutput.writeInt(id);
+                if (output == null) {
+                    bufferOutput.writeInt(-1);
+                } else {
+                    bufferOutput.writeInt(output.length);
+                    bufferOutput.write(output);
+                }
+            } catch (IOException e) {
+                // ByteArrayOutputStream 不会抛出
+                e.printStackTrace();
+            }
+            bufferRecordCount++;
+            // 缓冲中的第一条记录，定时写入
+            if (!isFlushScheduled) {
+                isFlushScheduled = true;
+                getWriteExecutor().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (MeshJournal.this) {
+                            isFlushScheduled = false;
+                        }
+                        writeBuffer();
+                    }
+                }, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            // 攒够一批，立即写入
+            if (bufferRecordCount < BATCH_SIZE || isWriteScheduled) {
+                return;
+            }
+            isWriteScheduled = true;
+        }
+        getWriteExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (MeshJournal.this) {
+                    isWriteScheduled = false;
+                }
+                writeBuffer();
+            }
+        });
+    }
+
+    /**
+     * 任务组结束
+     *
+     * @param isSuccess true: 所有节点都已完成，删除记录；false: 失败或取消，写入剩余记录以便下次恢复
+     */
+    void finish(final boolean isSuccess) {
+        getWriteExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!isSuccess) {
+                    writeBuffer();
+                }
+                // 之后到期的定时写入不再写文件，避免删除后重新创建
+                isFinished = true;
+                closeFile();
+                if (isSuccess && file.exists() && !file.delete()) {
+                    LogUtil.v("MeshJournal {0} delete failed.", file);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在写入线程中把缓冲的记录写入文件
+     */
+    private void writeBuffer() {
+        byte[] bytes;
+        synchronized (this) {
+            if (bufferRecordCount == 0) {
+                return;
+            }
+            bytes = buffer.toByteArray();
+            buffer.reset();
+            bufferRecordCount = 0;
+        }
+        if (isBroken || isFinished) {
+            return;
+        }
+        try {
+            if (fileOutput == null) {
+                fileOutput = new FileOutputStream(file, true);
+            }
+            fileOutput.write(bytes);
+            fileOutput.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+            isBroken = true;
+            closeFile();
+        }
+    }
+
+    private void closeFile() {
+        if (fileOutput != null) {
+            try {
+                fileOutput.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            fileOutput = null;
+        }
+    }
+}
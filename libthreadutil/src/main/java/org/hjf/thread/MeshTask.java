@@ -1,14 +1,17 @@
 package org.hjf.thread;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
 import org.hjf.log.LogUtil;
 
-import java.util.ArrayList;
+import java.io.File;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * “可交叉式多叉树结构” 异步进程，针对对处理后台线程的耗时操作：网络请求，数据库数据读取等
@@ -29,48 +32,200 @@ import java.util.List;
  * <p>
  * <p>
  * 支持：PointTask完成后自动销毁
+ * 支持：大量节点，节点以 int id 标识，上下节点关系以 CSR 数组保存，{@link #execute()} 后不再保留节点名称及其索引；
+ * 就绪节点先进入就绪队列，按线程池的剩余容量分批提交，不会因为线程池队列满而失败
  * 支持：失败重新运行，在 {@link RunPoint#run()} 方法最后进行标记 {@link RunPoint#setFlag(int)}
- * TODO 支持：暂停、继续、取消等操作，回调处处理
+ * 支持：完成回调，{@link #execute()} 返回 {@link MeshFuture}，任一节点任务失败时取消剩余节点任务
+ * 支持：取消，{@link MeshFuture#cancel(boolean)} 取消剩余节点任务
+ * 支持：断点恢复，{@link #setCheckpointFile(File)} 记录已完成的节点，进程被杀后重新执行时只运行未完成的节点
+ * 支持：对冲执行，{@link #addRunnable(String, Runnable, HedgePolicy, String...)} 降低长尾延迟节点对整体耗时的影响
+ * TODO 支持：暂停、继续等操作
  * TODO 支持：网络任务断网保留，网络状态变化后重新拉取
  */
 public final class MeshTask {
 
     static final String TOP_TASK_TAG = "TopPointTaskByAutoCreate";
 
+    /**
+     * 顶点任务的 id
+     */
+    static final int TOP_TASK_ID = 0;
+
+    /**
+     * 数组初始容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * FNV-1a 64 位哈希参数，用于计算任务组指纹
+     */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * 线程池已满且没有本任务组的节点在运行时，重试分发的间隔
+     */
+    private static final long RETRY_DISPATCH_DELAY_MILLIS = 10;
+
     /**
      * 自动创建顶点任务，进行初始任务的分发
      */
     private RunPoint topPointTask;
 
     /**
-     * 记录添加过的任务节点
+     * 任务名 -> 节点 id，仅在添加任务时使用，{@link #execute()} 后释放
+     */
+    private HashMap<String, Integer> runPointIdCache = new HashMap<>();
+
+    /**
+     * 所有节点任务，下标即节点 id，任务完成后置 null 以便回收
+     */
+    private RunPoint[] runPoints = new RunPoint[DEFAULT_CAPACITY];
+
+    /**
+     * 已添加的节点数
+     */
+    private int runPointCount = 0;
+
+    /**
+     * 添加任务时记录的连接关系：edgeFromIds[i] --> edgeToIds[i]，{@link #execute()} 时转换为 CSR 数组后释放
+     */
+    private int[] edgeFromIds = new int[DEFAULT_CAPACITY];
+    private int[] edgeToIds = new int[DEFAULT_CAPACITY];
+    private int edgeCount = 0;
+
+    /**
+     * CSR 格式的下节点关系：节点 id 的下节点为 nextIds[nextOffsets[id], nextOffsets[id + 1])
+     */
+    private int[] nextOffsets;
+    private int[] nextIds;
+
+    /**
+     * 每个节点未完成的上节点数，为 0 时可运行
+     */
+    private int[] preCounts;
+
+    /**
+     * 未完成的节点数
      */
-    private HashMap<String, RunPoint> runPointCache = new HashMap<>();
+    private int remainingCount = 0;
+
+    /**
+     * 就绪队列：上节点都已完成、还未提交到线程池的节点 id
+     */
+    private final IntQueue readyQueue = new IntQueue(DEFAULT_CAPACITY);
+
+    /**
+     * 已提交到线程池（含正在运行）的节点数，不为 0 时其完成后会继续分发就绪队列
+     */
+    private int runningCount = 0;
+
+    /**
+     * 由 {@link #executeAndWait()} 的调用线程运行所有节点，不提交到线程池。线程池无法再补偿线程时使用
+     */
+    private boolean isCallerRuns = false;
+
+    /**
+     * 是否已安排重试分发
+     */
+    private boolean isRetryScheduled = false;
+
+    /**
+     * 当前线程是否正在直接运行本任务组的就绪节点，避免节点完成回调中递归运行
+     */
+    private final ThreadLocal<Boolean> isRunningInline = new ThreadLocal<>();
+
+    /**
+     * 线程池已满时重试分发
+     */
+    private final Runnable retryDispatchTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (MeshTask.this) {
+                isRetryScheduled = false;
+            }
+            dispatch();
+        }
+    };
 
     /**
      * 任务是否已开始运行，开始运行了就不能添加任务，不能二次使用 execute 方法
      */
     private boolean isStarted = false;
 
+    /**
+     * 完成句柄，{@link #execute()} 时创建
+     */
+    private MeshFuture meshFuture;
+
+    /**
+     * 断点记录，未设置时为 null
+     */
+    @Nullable
+    private MeshJournal meshJournal;
+
+    /**
+     * 任务组指纹，节点名称及连接关系的哈希，{@link #buildGraph()} 时计算，用于校验断点记录是否属于此任务组
+     */
+    private long graphFingerprint;
+
     /**
      * 任务回收器，目前实现任务完成清除
      */
     private OnRunnableCompleteListener onTaskCompleteListener = new OnRunnableCompleteListener() {
 
         @Override
-        public void onRunnableCompleteListener(String taskTag) {
+        public void onRunnableCompleteListener(int runnableId) {
+            // 先记录断点，再激活下节点任务，保证记录中的节点的上节点都已记录
+            if (meshJournal != null && runnableId != TOP_TASK_ID) {
+                try {
+                    appendCheckpoint(runnableId);
+                } catch (Throwable throwable) {
+                    onRunnableFailedListener(runnableId, throwable);
+                    return;
+                }
+            }
+            boolean isAllComplete;
             synchronized (MeshTask.this) {
                 // 任务完成，激活此任务的下节点任务，并回收此任务
-                if (runPointCache != null && runPointCache.containsKey(taskTag)) {
-                    RunPoint pointTask = runPointCache.get(taskTag);
-                    // 激活下节点任务
-                    notifyNextTask(pointTask);
-                    // 回收Task
-                    pointTask.destroy();
-                    runPointCache.remove(taskTag);
-                    LogUtil.v("GC Runnable {0}, remaining runnable num = {1}", taskTag, runPointCache.size());
+                if (runPoints == null || runPoints[runnableId] == null) {
+                    return;
+                }
+                RunPoint pointTask = runPoints[runnableId];
+                // 激活下节点任务
+                notifyNextTask(runnableId);
+                // 回收Task
+                pointTask.destroy();
+                runPoints[runnableId] = null;
+                remainingCount--;
+                runningCount--;
+                LogUtil.v("GC Runnable {0}, remaining runnable num = {1}", pointTask.getName(), remainingCount);
+                isAllComplete = remainingCount == 0;
+                if (isAllComplete) {
+                    releaseGraph();
+                    if (meshJournal != null) {
+                        meshJournal.finish(true);
+                    }
                 }
             }
+            // 在锁外回调，避免回调中操作任务组造成死锁
+            if (isAllComplete) {
+                meshFuture.complete();
+            } else {
+                dispatch();
+            }
+        }
+
+        @Override
+        public void onRunnableFailedListener(int runnableId, Throwable throwable) {
+            synchronized (MeshTask.this) {
+                // 已被取消或其他任务已失败
+                if (runPoints == null || runPoints[runnableId] == null) {
+                    return;
+                }
+                LogUtil.v("Runnable[{0}] failed, cancel remaining runnable.", runPoints[runnableId].getName());
+            }
+            failGraph(throwable);
         }
     };
 
@@ -89,11 +244,29 @@ public final class MeshTask {
             public void run() {
             }
         });
-        topPointTask.setOnRunnableCompleteListener(onTaskCompleteListener);
-        runPointCache.put(topPointTask.getName(), topPointTask);
+        runPointIdCache.put(TOP_TASK_TAG, addRunPoint(topPointTask, new int[0]));
     }
 
 
+    /**
+     * 设置断点记录文件，开启断点恢复
+     * <p>
+     * 节点任务完成后按批次追加记录到文件中；文件中有上次未完成的记录时，{@link #execute()} 只运行未完成的节点，
+     * 已完成节点的输出结果通过 {@link CheckpointRunnable#restoreOutput(byte[])} 还原。所有节点完成后删除文件。
+     * <p>
+     * 注意：节点 id 按添加顺序分配，恢复时必须以相同的顺序添加相同的节点任务；
+     * 节点名称或连接关系不一致时丢弃记录重新运行
+     *
+     * @param file 断点记录文件
+     */
+    public MeshTask setCheckpointFile(@NonNull File file) {
+        if (isStarted) {
+            throw new RuntimeException("The MeshTask is already running, set checkpoint file is illegal operation.");
+        }
+        this.meshJournal = new MeshJournal(file);
+        return MeshTask.this;
+    }
+
     /**
      * 添加（次顶点）节点任务
      * 层次仅低于默认创建的 TopPointTask{@link MeshTask#topPointTask} 之下
@@ -110,14 +283,23 @@ public final class MeshTask {
      *
      * @param runnableName     任务名
      * @param runnable         任务对象
-     * @param preRunnableNames 此节点任务所有的上级节点任务
+     * @param preRunnableNames 此节点任务所有的上级节点任务，为空时挂在顶点任务之下
      */
     public MeshTask addRunnable(String runnableName, @NonNull Runnable runnable, String... preRunnableNames) {
-        if (isStarted) {
-            throw new RuntimeException("The MeshTask is already running, add new RunPoint is illegal operation.");
-        }
-        RunPoint runPoint = new RunPoint(runnableName, runnable);
-        addRunPoint(runPoint, preRunnableNames);
+        addRunPoint(new RunPoint(runnableName, runnable), preRunnableNames);
+        return MeshTask.this;
+    }
+
+    /**
+     * 添加对冲执行的节点任务，运行超过自身历史耗时的指定百分位后启动一个副本，先完成的副本激活下节点任务
+     *
+     * @param runnableName     任务名
+     * @param runnable         任务对象，两个副本会并发运行同一个对象，需要能够响应中断
+     * @param hedgePolicy      对冲策略，同一个节点任务多次运行时应复用同一个对象
+     * @param preRunnableNames 此节点任务所有的上级节点任务，为空时挂在顶点任务之下
+     */
+    public MeshTask addRunnable(String runnableName, @NonNull Runnable runnable, @NonNull HedgePolicy hedgePolicy, String... preRunnableNames) {
+        addRunPoint(new HedgedRunPoint(runnableName, runnable, hedgePolicy), preRunnableNames);
         return MeshTask.this;
     }
 
@@ -126,72 +308,458 @@ public final class MeshTask {
      *
      * @param runPoint         {@link RunPoint}
      * @param preRunnableNames front run point name
+     * @return run point id
      */
-    void addRunPoint(@NonNull RunPoint runPoint, String... preRunnableNames) {
-        this.connectRunPoint(runPoint, preRunnableNames);
-        this.runPointCache.put(runPoint.getName(), runPoint);
+    int addRunPoint(@NonNull RunPoint runPoint, String... preRunnableNames) {
+        if (isStarted) {
+            throw new RuntimeException("The MeshTask is already running, add new RunPoint is illegal operation.");
+        }
+        if (runPointIdCache.containsKey(runPoint.getName())) {
+            throw new IllegalArgumentException("Runnable " + runPoint.getName() + " already exists.");
+        }
+        int[] preRunPointIds = new int[preRunnableNames.length];
+        for (int i = 0; i < preRunnableNames.length; i++) {
+            Integer preRunPointId = runPointIdCache.get(preRunnableNames[i]);
+            if (preRunPointId == null) {
+                throw new IllegalArgumentException("PreRunnable " + preRunnableNames[i] + " not found.\n" +
+                        "You must add the " + preRunnableNames[i] + " Runnable before adding the Runnable " + runPoint.getName() + "."
+                );
+            }
+            preRunPointIds[i] = preRunPointId;
+        }
+        int id = addRunPoint(runPoint, preRunPointIds);
+        runPointIdCache.put(runPoint.getName(), id);
+        return id;
     }
 
-
     /**
-     * connect front and back run point.
+     * put run point into cache，不记录任务名，只能通过返回的 id 连接下节点任务
      *
-     * @param runPoint         {@link RunPoint}
-     * @param preRunnableNames front run point name
+     * @param runPoint       {@link RunPoint}
+     * @param preRunPointIds front run point id，为空时挂在顶点任务之下（顶点任务自身除外）
+     * @return run point id
      */
-    private void connectRunPoint(@NonNull RunPoint runPoint, String... preRunnableNames) {
-        // Arrays.asList() 返回的是java.util.Arrays$ArrayList 不是 ArrayList，其对 add、remove 方法的默认实现就是抛出异常 UnsupportedOperationException
-        List<String> preRunnableNameList = new ArrayList<>(Arrays.asList(preRunnableNames));
+    int addRunPoint(@NonNull RunPoint runPoint, int... preRunPointIds) {
+        if (isStarted) {
+            throw new RuntimeException("The MeshTask is already running, add new RunPoint is illegal operation.");
+        }
+        int id = runPointCount;
+        if (id > TOP_TASK_ID && preRunPointIds.length == 0) {
+            preRunPointIds = new int[]{TOP_TASK_ID};
+        }
         // 建立前置任务与当前任务的连接关系
-        for (String preRunnableName : preRunnableNameList) {
-            RunPoint preRunnable = runPointCache.get(preRunnableName);
-            if (preRunnable == null) {
-                throw new IllegalArgumentException("PreRunnable " + preRunnableName + " not found.\n" +
-                        "You must add the " + preRunnableName + " Runnable before adding the Runnable " + runPoint.getName() + "."
+        for (int preRunPointId : preRunPointIds) {
+            if (preRunPointId < 0 || preRunPointId >= id) {
+                throw new IllegalArgumentException("PreRunnable id " + preRunPointId + " not found.\n" +
+                        "You must add the PreRunnable before adding the Runnable " + runPoint.getName() + "."
                 );
             }
-            preRunnable.addNextRunnableName(runPoint.getName());
+            addEdge(preRunPointId, id);
         }
-        // 当前任务设置所有上节点任务标识
-        runPoint.setPreRunnableNameList(preRunnableNameList);
+        if (id == runPoints.length) {
+            runPoints = Arrays.copyOf(runPoints, id * 2);
+        }
+        runPoint.setId(id);
         // 设置任务完成回调
         runPoint.setOnRunnableCompleteListener(onTaskCompleteListener);
+        runPoints[id] = runPoint;
+        runPointCount++;
+        return id;
     }
 
+    /**
+     * 记录连接关系
+     */
+    private void addEdge(int fromId, int toId) {
+        if (edgeCount == edgeFromIds.length) {
+            edgeFromIds = Arrays.copyOf(edgeFromIds, edgeCount * 2);
+            edgeToIds = Arrays.copyOf(edgeToIds, edgeCount * 2);
+        }
+        edgeFromIds[edgeCount] = fromId;
+        edgeToIds[edgeCount] = toId;
+        edgeCount++;
+    }
 
     /**
-     * 激活下节点任务
-     *
-     * @param meshRunnablePoint 已完成的 Task
+     * 将添加任务时记录的连接关系转换为 CSR 数组，并释放只在添加任务时使用的数据
+     */
+    private void buildGraph() {
+        int[] offsets = new int[runPointCount + 1];
+        int[] counts = new int[runPointCount];
+        for (int i = 0; i < edgeCount; i++) {
+            offsets[edgeFromIds[i] + 1]++;
+            counts[edgeToIds[i]]++;
+        }
+        for (int id = 0; id < runPointCount; id++) {
+            offsets[id + 1] += offsets[id];
+        }
+        int[] ids = new int[edgeCount];
+        int[] cursors = Arrays.copyOf(offsets, runPointCount);
+        for (int i = 0; i < edgeCount; i++) {
+            ids[cursors[edgeFromIds[i]]++] = edgeToIds[i];
+        }
+        nextOffsets = offsets;
+        nextIds = ids;
+        preCounts = counts;
+        remainingCount = runPointCount;
+        runPoints = Arrays.copyOf(runPoints, runPointCount);
+        if (meshJournal != null) {
+            graphFingerprint = computeFingerprint();
+        }
+        // 名称只在添加任务、计算指纹时使用，之后以 id 标识
+        for (RunPoint runPoint : runPoints) {
+            runPoint.releaseName();
+        }
+
+        edgeFromIds = null;
+        edgeToIds = null;
+        runPointIdCache = null;
+    }
+
+    /**
+     * 计算任务组指纹：节点数、CSR 连接关系、节点名称
      */
-    private void notifyNextTask(@NonNull RunPoint meshRunnablePoint) {
+    private long computeFingerprint() {
+        long hash = hash(FNV_OFFSET_BASIS, runPointCount);
+        for (int offset : nextOffsets) {
+            hash = hash(hash, offset);
+        }
+        for (int nextId : nextIds) {
+            hash = hash(hash, nextId);
+        }
+        for (RunPoint runPoint : runPoints) {
+            String name = runPoint.getName();
+            hash = hash(hash, name.length());
+            for (int i = 0; i < name.length(); i++) {
+                hash = hash(hash, name.charAt(i));
+            }
+        }
+        return hash;
+    }
 
-        List<String> nextRunnableNameList = meshRunnablePoint.getNextRunnableNameList();
-        if (nextRunnableNameList == null || nextRunnableNameList.isEmpty()) {
+    private static long hash(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash ^= (value >>> shift) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 读取断点记录，上次已完成的节点还原输出结果后直接标记为完成
+     */
+    private void restoreCheckpoint() {
+        if (meshJournal == null) {
             return;
         }
+        meshJournal.open(runPointCount, graphFingerprint);
+        for (int id = TOP_TASK_ID + 1; id < runPointCount; id++) {
+            if (!meshJournal.isCompleted(id)) {
+                continue;
+            }
+            RunPoint runPoint = runPoints[id];
+            byte[] output = meshJournal.takeOutput(id);
+            if (output != null && runPoint.runnable instanceof CheckpointRunnable) {
+                ((CheckpointRunnable) runPoint.runnable).restoreOutput(output);
+            }
+            for (int i = nextOffsets[id]; i < nextOffsets[id + 1]; i++) {
+                preCounts[nextIds[i]]--;
+            }
+            runPoint.destroy();
+            runPoints[id] = null;
+            remainingCount--;
+        }
+        meshJournal.releaseRestored();
+        LogUtil.v("MeshTask restore {0} completed runnable from checkpoint.", runPointCount - remainingCount);
+    }
 
-        for (String nextRunnableName : nextRunnableNameList) {
-            if (runPointCache != null && runPointCache.containsKey(nextRunnableName)) {
-                LogUtil.v("Runnable[{0}] try notify Runnable[{1}]", meshRunnablePoint.getName(), nextRunnableName);
-                RunPoint nextPoint = runPointCache.get(nextRunnableName);
-                // 删除上级节点，如果所有上级节点都完成后，可运行
-                if (nextPoint.removePreRunnableByName(meshRunnablePoint.getName())) {
-                    LogUtil.v("Runnable[{0}] notify success.", meshRunnablePoint.getName());
-                    ThreadPoolExecutor.getInstance().submit(nextPoint);
+    /**
+     * 记录节点完成及其输出结果
+     */
+    private void appendCheckpoint(int runnableId) {
+        RunPoint runPoint;
+        synchronized (MeshTask.this) {
+            if (runPoints == null || runPoints[runnableId] == null) {
+                return;
+            }
+            runPoint = runPoints[runnableId];
+        }
+        byte[] output = null;
+        if (runPoint.runnable instanceof CheckpointRunnable) {
+            output = ((CheckpointRunnable) runPoint.runnable).saveOutput();
+        }
+        meshJournal.append(runnableId, output);
+    }
+
+    /**
+     * 所有任务已完成或已取消，释放连接关系
+     */
+    private void releaseGraph() {
+        runPoints = null;
+        nextOffsets = null;
+        nextIds = null;
+        preCounts = null;
+        readyQueue.clear();
+        // 唤醒 executeAndWait 中等待的调用线程
+        notifyAll();
+    }
+
+    /**
+     * 取出就绪队列的第一个节点
+     */
+    private RunPoint pollReadyTask() {
+        return runPoints[readyQueue.poll()];
+    }
+
+    /**
+     * 分发就绪队列；线程池已满且没有本任务组的节点在运行时（不会再有节点完成来触发分发），
+     * 在工作线程中直接运行就绪节点，否则稍后重试
+     */
+    private void dispatch() {
+        boolean isStalled;
+        try {
+            synchronized (MeshTask.this) {
+                if (runPoints == null) {
+                    return;
+                }
+                submitReadyTask();
+                if (!readyQueue.isEmpty()) {
+                    // 唤醒 executeAndWait 中等待的调用线程来运行
+                    MeshTask.this.notifyAll();
+                }
+                isStalled = !readyQueue.isEmpty() && runningCount == 0 && !isCallerRuns;
+            }
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭
+            failGraph(e);
+            return;
+        }
+        if (!isStalled) {
+            return;
+        }
+        if (ThreadPoolExecutor.isWorkerThread()) {
+            runReadyTaskInline();
+        } else {
+            scheduleRetryDispatch();
+        }
+    }
+
+    /**
+     * 按线程池的剩余容量提交就绪节点，提交不了的留在就绪队列中
+     */
+    private void submitReadyTask() {
+        if (isCallerRuns) {
+            return;
+        }
+        ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        if (pool.isShutdown()) {
+            throw new RejectedExecutionException("ThreadPoolExecutor is shutdown.");
+        }
+        while (!readyQueue.isEmpty() && pool.hasCapacity()) {
+            RunPoint runPoint = runPoints[readyQueue.peek()];
+            try {
+                pool.execute(runPoint);
+            } catch (RejectedExecutionException e) {
+                if (pool.isShutdown()) {
+                    throw e;
+                }
+                // 容量被其他任务抢占，等本任务组的节点完成后再提交
+                break;
+            }
+            pollReadyTask();
+            runningCount++;
+        }
+    }
+
+    /**
+     * 在当前工作线程中依次运行就绪节点，直到有节点成功提交到线程池
+     * 节点完成回调中再次触发时直接返回，由外层循环继续运行，避免递归
+     */
+    private void runReadyTaskInline() {
+        if (Boolean.TRUE.equals(isRunningInline.get())) {
+            return;
+        }
+        isRunningInline.set(true);
+        try {
+            while (true) {
+                RunPoint runPoint;
+                synchronized (MeshTask.this) {
+                    if (runPoints == null || readyQueue.isEmpty() || runningCount > 0) {
+                        return;
+                    }
+                    runPoint = pollReadyTask();
+                    runningCount++;
                 }
-                // 还有上级节点任务在进行，不能运行
-                else {
-                    LogUtil.v("Runnable[{0}] notify failed", meshRunnablePoint.getName());
+                LogUtil.v("ThreadPoolExecutor is full, run Runnable[{0}] in current thread.", runPoint.getName());
+                runPoint.run();
+            }
+        } finally {
+            isRunningInline.remove();
+        }
+    }
+
+    private void scheduleRetryDispatch() {
+        synchronized (MeshTask.this) {
+            if (isRetryScheduled) {
+                return;
+            }
+            isRetryScheduled = true;
+        }
+        ThreadPoolExecutor.getScheduler().schedule(retryDispatchTask, RETRY_DISPATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 任务组失败，取消剩余节点任务
+     */
+    private void failGraph(@NonNull Throwable throwable) {
+        cancel();
+        meshFuture.completeExceptionally(throwable);
+    }
+
+
+    /**
+     * 激活下节点任务
+     *
+     * @param runnableId 已完成的 Task id
+     */
+    private void notifyNextTask(int runnableId) {
+        for (int i = nextOffsets[runnableId]; i < nextOffsets[runnableId + 1]; i++) {
+            int nextId = nextIds[i];
+            RunPoint nextPoint = runPoints[nextId];
+            if (nextPoint == null) {
+                continue;
+            }
+            LogUtil.v("Runnable[{0}] try notify Runnable[{1}]", runPoints[runnableId].getName(), nextPoint.getName());
+            // 上级节点计数减一，如果所有上级节点都完成后，进入就绪队列
+            if (--preCounts[nextId] == 0) {
+                LogUtil.v("Runnable[{0}] notify success.", runPoints[runnableId].getName());
+                readyQueue.push(nextId);
+            }
+            // 还有上级节点任务在进行，不能运行
+            else {
+                LogUtil.v("Runnable[{0}] notify failed", runPoints[runnableId].getName());
+            }
+        }
+    }
+
+    /**
+     * 执行
+     *
+     * @return 完成句柄，最后一个节点任务完成时完成；任一节点任务失败时以该异常完成，并取消剩余的节点任务
+     */
+    @WorkerThread
+    public MeshFuture execute() {
+        return execute(false);
+    }
+
+    /**
+     * 执行
+     *
+     * @param isCallerRuns true: 所有节点由 {@link #executeAndWait()} 的调用线程运行，与 isStarted 一起设置，
+     *                     重复执行时不会影响已在运行中的任务组
+     */
+    private MeshFuture execute(boolean isCallerRuns) {
+        synchronized (MeshTask.this) {
+            if (isStarted) {
+                throw new RuntimeException("The MeshTask is already running, execute again is illegal operation.");
+            }
+            MeshTask.this.isStarted = true;
+            MeshTask.this.isCallerRuns = isCallerRuns;
+            MeshTask.this.meshFuture = new MeshFuture(MeshTask.this);
+            buildGraph();
+        }
+        try {
+            synchronized (MeshTask.this) {
+                restoreCheckpoint();
+                // 顶点任务，以及断点恢复后上节点都已完成的节点
+                for (int id = TOP_TASK_ID; id < runPointCount; id++) {
+                    if (runPoints[id] != null && preCounts[id] == 0) {
+                        readyQueue.push(id);
+                    }
                 }
             }
+        } catch (Throwable throwable) {
+            failGraph(throwable);
+            return meshFuture;
         }
+        dispatch();
+        return meshFuture;
     }
 
+    /**
+     * 执行并阻塞等待所有节点任务完成
+     * 在其他 {@link RunPoint} 中执行嵌套的 MeshTask 时使用，不会饿死线程池：
+     * 在线程池的工作线程中调用时，先补偿一个工作线程再分发节点，等待期间调用线程直接运行线程池暂时放不下的就绪节点；
+     * 线程池无法再补偿线程时，所有节点都在调用线程中运行
+     *
+     * @throws ExecutionException 有节点任务执行失败
+     */
     @WorkerThread
-    public void execute() {
-        MeshTask.this.isStarted = true;
-        ThreadPoolExecutor.getInstance().submit(MeshTask.this.topPointTask);
+    public void executeAndWait() throws InterruptedException, ExecutionException {
+        ThreadPoolExecutor pool = ThreadPoolExecutor.currentPool();
+        if (pool == null) {
+            execute().get();
+            return;
+        }
+        boolean isCompensated = pool.tryCompensate();
+        try {
+            MeshFuture future = execute(!isCompensated);
+            helpRunReadyTask();
+            future.get();
+        } finally {
+            if (isCompensated) {
+                pool.releaseCompensate();
+            }
+        }
+    }
+
+    /**
+     * 在调用线程中运行就绪节点，直到所有节点完成或任务组失败、取消
+     */
+    private void helpRunReadyTask() throws InterruptedException {
+        isRunningInline.set(true);
+        try {
+            while (true) {
+                RunPoint runPoint;
+                synchronized (MeshTask.this) {
+                    while (runPoints != null && readyQueue.isEmpty()) {
+                        MeshTask.this.wait();
+                    }
+                    if (runPoints == null) {
+                        return;
+                    }
+                    runPoint = pollReadyTask();
+                    runningCount++;
+                }
+                LogUtil.v("Run Runnable[{0}] in the thread waiting for the MeshTask.", runPoint.getName());
+                runPoint.run();
+            }
+        } finally {
+            isRunningInline.remove();
+        }
+    }
+
+    /**
+     * 取消所有未完成的节点任务：队列中的任务移出线程池，运行中的任务完成后不再激活下节点任务
+     */
+    void cancel() {
+        synchronized (MeshTask.this) {
+            if (runPoints == null) {
+                return;
+            }
+            for (RunPoint runPoint : runPoints) {
+                if (runPoint != null) {
+                    runPoint.cancel();
+                    ThreadPoolExecutor.getInstance().remove(runPoint);
+                    runPoint.destroy();
+                }
+            }
+            releaseGraph();
+            // 保留断点记录，下次执行时恢复
+            if (meshJournal != null) {
+                meshJournal.finish(false);
+            }
+        }
     }
 
     public void pause() {
@@ -0,0 +1,21 @@
+package org.hjf.thread;
+
+import android.support.annotation.NonNull;
+
+/**
+ * {@link MeshTask} 所有节点任务完成后回调，在完成最后一个节点任务的线程中回调
+ */
+public interface OnMeshCompleteListener {
+
+    /**
+     * 所有节点任务都已成功完成
+     */
+    void onComplete();
+
+    /**
+     * 有节点任务执行失败，或任务被取消（{@link java.util.concurrent.CancellationException}），剩余的节点任务不再执行
+     *
+     * @param throwable 失败原因
+     */
+    void onFailure(@NonNull Throwable throwable);
+}
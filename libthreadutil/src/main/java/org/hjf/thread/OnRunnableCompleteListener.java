@@ -5,5 +5,10 @@ package org.hjf.thread;
  */
 interface OnRunnableCompleteListener {
 
-    void onRunnableCompleteListener(String runnableName);
+    void onRunnableCompleteListener(int runnableId);
+
+    /**
+     * {@link RunPoint} 执行失败（抛出异常）后回调
+     */
+    void onRunnableFailedListener(int runnableId, Throwable throwable);
 }
@@ -5,18 +5,15 @@ import android.support.annotation.Nullable;
 
 import org.hjf.log.LogUtil;
 
-import java.util.LinkedList;
-import java.util.List;
-
 /**
  * Run point
  * 采用 装饰设计模式 对 {@link Runnable} 进行功能的添加
  * <p>
  * 增加功能：
  * 1. 唯一任务标识
- * 2. 下节点任务 对象 缓存
- * 3. 上节点任务 标识 缓存
- * 4. GC回收通知器，通知 {@link RunPoint} 回收已完成的任务
+ * 2. GC回收通知器，通知 {@link MeshTask} 回收已完成的任务
+ * <p>
+ * 上下节点关系由 {@link MeshTask} 以数组形式统一保存，节点本身只保留 id，名称在 {@link MeshTask} 执行后释放，减少大量节点时的内存占用
  */
 class RunPoint implements Runnable {
 
@@ -26,26 +23,32 @@ class RunPoint implements Runnable {
     protected Runnable runnable;
 
     /**
-     * 名称
+     * 名称，只在添加任务（校验上节点、计算任务组指纹）时使用，{@link MeshTask} 执行后释放，之后以 id 标识
      */
+    @Nullable
     private String name;
 
+    /**
+     * 在 {@link MeshTask} 中的节点 id
+     */
+    private int id;
+
     /**
      * {@link Runnable#run()} 代码执行完成后接下来的动作策略
      */
     @RunnableFlag
-    private int flag = RunnableFlag.NEXT;
+    private volatile int flag = RunnableFlag.NEXT;
 
     /**
-     * 所有的 上节点任务 标示
+     * 执行失败的原因，不为 null 时不再重复执行，通知任务组失败
      */
     @Nullable
-    private List<String> preRunnableNameList;
+    private volatile Throwable failure;
+
     /**
-     * 所有的 下节点任务 标示
+     * 任务组已取消，还未运行的任务不再运行
      */
-    @Nullable
-    private List<String> nextRunnableNameList;
+    private volatile boolean isCancelled = false;
 
     private OnRunnableCompleteListener onrunnableCompleteListener;
 
@@ -59,116 +62,164 @@ class RunPoint implements Runnable {
 
 
     /**
-     * 获取任务名
+     * 获取任务名，名称已释放时返回 "#id"
      */
-    @Nullable
+    @NonNull
     public String getName() {
-        return this.name;
-    }
-
-    void setFlag(@RunnableFlag int flag) {
-        this.flag = flag;
+        String name = this.name;
+        return name != null ? name : "#" + this.id;
     }
 
     /**
-     * 设置任务回收器
-     *
-     * @param onRunnableCompleteListener 任务回收器
+     * 释放名称，{@link MeshTask} 执行后节点只以 id 标识
      */
-    void setOnRunnableCompleteListener(OnRunnableCompleteListener onRunnableCompleteListener) {
-        this.onrunnableCompleteListener = onRunnableCompleteListener;
+    void releaseName() {
+        this.name = null;
     }
 
-    /**
-     * 设置上级节点
-     *
-     * @param preRunnableTagList 所有上级节点的任务标示
-     */
-    void setPreRunnableNameList(@Nullable List<String> preRunnableTagList) {
-        this.preRunnableNameList = preRunnableTagList;
+    int getId() {
+        return this.id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    void setFlag(@RunnableFlag int flag) {
+        this.flag = flag;
     }
 
     /**
-     * 添加下个任务名称
+     * 标记任务执行失败，用于在其他线程中执行 {@link #runnable} 的情况
      *
-     * @param runnableName runnable name
+     * @param throwable 失败原因
      */
-    void addNextRunnableName(String runnableName) {
-        if (nextRunnableNameList == null) {
-            nextRunnableNameList = new LinkedList<>();
-        }
-        nextRunnableNameList.add(runnableName);
+    void setFailure(@NonNull Throwable throwable) {
+        this.failure = throwable;
     }
 
     /**
-     * 获取所有下级节点任务标识
+     * 取消任务，还未开始运行的任务不再运行
      */
-    @Nullable
-    List<String> getNextRunnableNameList() {
-        return this.nextRunnableNameList;
+    void cancel() {
+        this.isCancelled = true;
+    }
+
+    boolean isCancelled() {
+        return this.isCancelled;
     }
 
     /**
-     * 移除上节点任务标识，表示上节点任务已经完成
+     * 设置任务回收器
      *
-     * @return true: 所有上级节点任务都完成了，Task可运行
+     * @param onRunnableCompleteListener 任务回收器
      */
-    boolean removePreRunnableByName(String taskName) {
-        if (this.preRunnableNameList == null || this.preRunnableNameList.isEmpty()) {
-            return true;
-        }
-        this.preRunnableNameList.remove(taskName);
-        return preRunnableNameList.isEmpty();
+    void setOnRunnableCompleteListener(OnRunnableCompleteListener onRunnableCompleteListener) {
+        this.onrunnableCompleteListener = onRunnableCompleteListener;
     }
 
     protected void destroy() {
-
         this.onrunnableCompleteListener = null;
+    }
 
-        if (nextRunnableNameList != null) {
-            nextRunnableNameList.clear();
-            nextRunnableNameList = null;
+    @Override
+    public void run() {
+        if (this.isCancelled) {
+            LogUtil.v("runnable【{0}】 is cancelled.", getName());
+            return;
+        }
+        try {
+            do {
+                LogUtil.v("runnable【{0}】 to run.", getName());
+                onPreRun();
+                LogUtil.v("runnable【{0}】 to run.", getName());
+                onRun();
+                LogUtil.v("runnable【{0}】 run end. Current runnable flag is {1}", getName(), this.flag);
+                onEndRun();
+
+                // 等待状态，每 0.1 秒检擦是否等待结束
+                if (this.flag == RunnableFlag.WAIT) {
+                    waitFlag();
+                }
+            } while (this.flag == RunnableFlag.AGAIN && this.failure == null);
+        } catch (Throwable throwable) {
+            this.failure = throwable;
         }
 
-        if (preRunnableNameList != null) {
-            preRunnableNameList.clear();
-            preRunnableNameList = null;
+        if (this.failure != null) {
+            notifyRunnableFailed(this.failure);
+        } else {
+            notifyRunnableComplete();
         }
     }
 
-    @Override
-    public void run() {
-        do {
-            LogUtil.v("runnable【{0}】 to run.", this.name);
-            onPreRun();
-            LogUtil.v("runnable【{0}】 to run.", this.name);
-            onRun();
-            LogUtil.v("runnable【{0}】 run end. Current runnable flag is {1}", this.name, this.flag);
-            onEndRun();
-
-            // 等待状态，每 0.1 秒检擦是否等待结束
-            while (this.flag == RunnableFlag.WAIT) {
-                LogUtil.v("runnable【{0}】 wait ...", this.name);
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+    /**
+     * 调起 runnable Complete 回掉
+     * 通知任务组 激活NextRunnable & 回收当前Runnable
+     */
+    protected void notifyRunnableComplete() {
+        LogUtil.v("runnable【{0}】 complete.", getName());
+        OnRunnableCompleteListener listener = this.onrunnableCompleteListener;
+        if (listener != null) {
+            try {
+                listener.onRunnableCompleteListener(this.id);
+            } catch (Throwable throwable) {
+                // 不能抛给线程池，否则工作线程崩溃
+                LogUtil.v("runnable【{0}】 complete listener throw exception: {1}", getName(), throwable);
+                throwable.printStackTrace();
             }
-        } while (this.flag == RunnableFlag.AGAIN);
+        }
+    }
 
-        LogUtil.v("runnable【{0}】 complete.", this.name);
-        // 调起 runnable Complete 回掉
-        // 通知任务组 激活NextRunnable & 回收当前Runnable
-        if (this.onrunnableCompleteListener != null) {
-            this.onrunnableCompleteListener.onRunnableCompleteListener(this.name);
+    /**
+     * 通知任务组 执行失败，取消剩余Runnable
+     */
+    protected void notifyRunnableFailed(@NonNull Throwable throwable) {
+        LogUtil.v("runnable【{0}】 failed. {1}", getName(), throwable);
+        OnRunnableCompleteListener listener = this.onrunnableCompleteListener;
+        if (listener != null) {
+            try {
+                listener.onRunnableFailedListener(this.id, throwable);
+            } catch (Throwable listenerThrowable) {
+                // 不能抛给线程池，否则工作线程崩溃
+                LogUtil.v("runnable【{0}】 failed listener throw exception: {1}", getName(), listenerThrowable);
+                listenerThrowable.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 等待 {@link RunnableFlag#WAIT} 标记结束，阻塞期间线程池会补偿工作线程
+     */
+    private void waitFlag() {
+        try {
+            ThreadPoolExecutor.managedBlock(new ManagedBlocker() {
+
+                @Override
+                public boolean block() {
+                    LogUtil.v("runnable【{0}】 wait ...", getName());
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    return isReleasable();
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return flag != RunnableFlag.WAIT;
+                }
+            });
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         }
     }
 
     protected void onPreRun() {
         if (this.runnable == null) {
-            LogUtil.v("RunPoint【{0}】 member runnable is null.", this.name);
-            throw new RuntimeException("RunPoint【" + this.name + "】 member runnable is null.");
+            LogUtil.v("RunPoint【{0}】 member runnable is null.", getName());
+            throw new RuntimeException("RunPoint【" + getName() + "】 member runnable is null.");
         }
     }
 
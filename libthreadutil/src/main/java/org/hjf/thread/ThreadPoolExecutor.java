@@ -1,6 +1,8 @@
 package org.hjf.thread;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
 import org.hjf.log.LogUtil;
 
@@ -12,8 +14,10 @@ import java.util.concurrent.FutureTask;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Runnable 默认在后台线程 {@link android.os.Process#THREAD_PRIORITY_BACKGROUND} 运行
@@ -25,6 +29,36 @@ class ThreadPoolExecutor extends java.util.concurrent.ThreadPoolExecutor {
 
     private static ThreadPoolExecutor threadPoolExecutor;
 
+    /**
+     * 临时补偿线程数上限，防止阻塞任务过多时无限制创建线程
+     */
+    private static final int MAX_COMPENSATE_THREAD_COUNT = 64;
+
+    /**
+     * 记录当前线程正在为哪个线程池执行任务，非工作线程为 null
+     */
+    private static final ThreadLocal<ThreadPoolExecutor> currentPool = new ThreadLocal<>();
+
+    /**
+     * 定时任务线程，如线程池已满时重试分发、启动对冲副本
+     */
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * 当前已补偿的线程数
+     */
+    private int compensateThreadCount = 0;
+
+    /**
+     * 同时运行的对冲副本数上限，防止对冲副本占满线程池
+     */
+    private static final int MAX_HEDGE_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * 当前运行中（含排队中）的对冲副本数
+     */
+    private static final AtomicInteger hedgeCount = new AtomicInteger(0);
+
     /**
      * @param corePoolSize    核心线程数，即使空闲也存活。
      *                        【核心线程:3】，当前【线程池线程数:1】且空闲，来新的任务后会新建线程而不是复用。
@@ -93,10 +127,12 @@ class ThreadPoolExecutor extends java.util.concurrent.ThreadPoolExecutor {
                     t.getName(), t.getPriority(), defaultThreadPriority);
             android.os.Process.setThreadPriority(defaultThreadPriority);
         }
+        currentPool.set(this);
     }
 
     @Override
     protected void afterExecute(Runnable r, Throwable t) {
+        currentPool.remove();
 //        LogUtil.v("ThreadPoolExecutor afterExecute.");
     }
 
@@ -127,6 +163,134 @@ class ThreadPoolExecutor extends java.util.concurrent.ThreadPoolExecutor {
         }
     }
 
+    /**
+     * @return true: 当前线程是线程池的工作线程
+     */
+    static boolean isWorkerThread() {
+        return currentPool.get() != null;
+    }
+
+    /**
+     * @return 当前线程所属的线程池，非工作线程返回 null
+     */
+    @Nullable
+    static ThreadPoolExecutor currentPool() {
+        return currentPool.get();
+    }
+
+    /**
+     * @return true: 还有空闲线程可以创建，或任务队列未满，提交任务不会被拒绝
+     */
+    boolean hasCapacity() {
+        return getPoolSize() < getMaximumPoolSize() || getQueue().remainingCapacity() > 0;
+    }
+
+    /**
+     * 获取共用的定时任务线程，定时任务应尽快完成，耗时操作提交到线程池
+     */
+    static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "ThreadPoolScheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * 执行可管理的阻塞操作
+     * 当前线程是线程池的工作线程时，阻塞期间临时增加一个核心线程，阻塞结束后再收回，
+     * 保证嵌套任务、等待中的任务不会占满线程池导致其他任务无法执行
+     *
+     * @param blocker {@link ManagedBlocker}
+     */
+    static void managedBlock(@NonNull ManagedBlocker blocker) throws InterruptedException {
+        if (blocker.isReleasable()) {
+            return;
+        }
+        ThreadPoolExecutor pool = currentPool.get();
+        boolean isCompensated = pool != null && pool.tryCompensate();
+        try {
+            while (!blocker.isReleasable()) {
+                if (blocker.block()) {
+                    break;
+                }
+            }
+        } finally {
+            if (isCompensated) {
+                pool.releaseCompensate();
+            }
+        }
+    }
+
+    /**
+     * 补偿一个线程：先扩大最大线程数，再扩大核心线程数，
+     * 扩大核心线程数时若队列中有等待的任务会立即创建新线程执行
+     *
+     * @return true: 补偿成功
+     */
+    synchronized boolean tryCompensate() {
+        if (isShutdown() || compensateThreadCount >= MAX_COMPENSATE_THREAD_COUNT) {
+            return false;
+        }
+        compensateThreadCount++;
+        setMaximumPoolSize(getMaximumPoolSize() + 1);
+        setCorePoolSize(getCorePoolSize() + 1);
+        LogUtil.v("ThreadPoolExecutor compensate thread, compensate thread num = {0}", compensateThreadCount);
+        return true;
+    }
+
+    /**
+     * 收回补偿的线程：先缩小核心线程数，再缩小最大线程数，多余的线程空闲后自动销毁
+     */
+    synchronized void releaseCompensate() {
+        compensateThreadCount--;
+        setCorePoolSize(getCorePoolSize() - 1);
+        setMaximumPoolSize(getMaximumPoolSize() - 1);
+        LogUtil.v("ThreadPoolExecutor release compensate thread, compensate thread num = {0}", compensateThreadCount);
+    }
+
+    /**
+     * 申请运行一个对冲副本，对冲副本数已达上限或任务队列已满时申请失败
+     *
+     * @return true: 申请成功，副本结束后必须调用 {@link #releaseHedge()}
+     */
+    boolean tryAcquireHedge() {
+        if (isShutdown() || getQueue().remainingCapacity() == 0) {
+            return false;
+        }
+        while (true) {
+            int count = hedgeCount.get();
+            if (count >= MAX_HEDGE_COUNT) {
+                return false;
+            }
+            if (hedgeCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 对冲副本结束，归还预算。预算是所有线程池实例共用的，线程池销毁重建后也要归还，所以是静态方法，
+     * 不要通过 {@link #getInstance()} 调用，否则线程池已销毁时会重新创建
+     */
+    static void releaseHedge() {
+        hedgeCount.decrementAndGet();
+    }
+
+    /**
+     * @return 当前运行中（含排队中）的对冲副本数
+     */
+    @VisibleForTesting
+    static int getHedgeCount() {
+        return hedgeCount.get();
+    }
+
 
     /**
      * ThreadPoolExecutor 的 PriorityBlockingQueue 支持问题
@@ -4,6 +4,7 @@ package org.hjf.thread;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.os.Looper;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 /**
@@ -42,6 +43,16 @@ public final class ThreadUtil {
         return Thread.currentThread().getId() == Looper.getMainLooper().getThread().getId();
     }
 
+    /**
+     * 执行可管理的阻塞操作。在任务中需要阻塞等待时（如等待嵌套的 {@link MeshTask} 完成）使用，
+     * 线程池会在阻塞期间临时补偿一个工作线程，避免线程池被阻塞任务占满
+     *
+     * @param blocker {@link ManagedBlocker}
+     */
+    public static void managedBlock(@NonNull ManagedBlocker blocker) throws InterruptedException {
+        ThreadPoolExecutor.managedBlock(blocker);
+    }
+
     /**
      * 获取当前进程名
      */
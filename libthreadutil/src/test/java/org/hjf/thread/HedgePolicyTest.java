@@ -0,0 +1,50 @@
+package org.hjf.thread;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link HedgePolicy} 对冲延迟计算
+ */
+public class HedgePolicyTest {
+
+    @Test
+    public void noDelayBeforeEnoughSamples() {
+        HedgePolicy hedgePolicy = new HedgePolicy(95, 3, 0);
+        hedgePolicy.recordLatency(1000);
+        hedgePolicy.recordLatency(2000);
+        assertEquals(-1, hedgePolicy.getHedgeDelayMicros());
+    }
+
+    @Test
+    public void delayIsPercentileOfHistory() {
+        HedgePolicy hedgePolicy = new HedgePolicy(90, 10, 0);
+        for (int i = 1; i <= 10; i++) {
+            hedgePolicy.recordLatency(i * 1000);
+        }
+        assertEquals(9000, hedgePolicy.getHedgeDelayMicros());
+    }
+
+    @Test
+    public void subMillisecondLatencyKeepsPrecision() {
+        HedgePolicy hedgePolicy = new HedgePolicy(100, 2, 0);
+        hedgePolicy.recordLatency(300);
+        hedgePolicy.recordLatency(700);
+        assertEquals(700, hedgePolicy.getHedgeDelayMicros());
+    }
+
+    @Test
+    public void delayIsNotBelowMinDelay() {
+        HedgePolicy hedgePolicy = new HedgePolicy(95, 2);
+        hedgePolicy.recordLatency(300);
+        hedgePolicy.recordLatency(700);
+        // 默认最小对冲延迟 10ms
+        assertEquals(10000, hedgePolicy.getHedgeDelayMicros());
+
+        hedgePolicy = new HedgePolicy(95, 2, 5);
+        hedgePolicy.recordLatency(300);
+        hedgePolicy.recordLatency(700);
+        assertEquals(5000, hedgePolicy.getHedgeDelayMicros());
+    }
+}
@@ -0,0 +1,207 @@
+package org.hjf.thread;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hjf.thread.ThreadPoolTestUtil.saturate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link HedgedRunPoint} 主副本与对冲副本的胜负、失败、预算
+ */
+public class HedgedRunPointTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    /**
+     * 主副本运行超过 1ms 后启动对冲副本
+     */
+    private HedgePolicy hedgePolicy;
+
+    private final AtomicInteger callCount = new AtomicInteger();
+    private final AtomicInteger completeCount = new AtomicInteger();
+    private final List<Throwable> failureList = Collections.synchronizedList(new ArrayList<Throwable>());
+    private final CountDownLatch notifiedLatch = new CountDownLatch(1);
+
+    private final OnRunnableCompleteListener listener = new OnRunnableCompleteListener() {
+        @Override
+        public void onRunnableCompleteListener(int runnableId) {
+            completeCount.incrementAndGet();
+            notifiedLatch.countDown();
+        }
+
+        @Override
+        public void onRunnableFailedListener(int runnableId, Throwable throwable) {
+            failureList.add(throwable);
+            notifiedLatch.countDown();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        hedgePolicy = new HedgePolicy(100, 1, 0);
+        hedgePolicy.recordLatency(TimeUnit.MILLISECONDS.toMicros(1));
+    }
+
+    @Test
+    public void hedgeWinsAndInterruptsPrimary() throws Exception {
+        final AtomicBoolean isPrimaryInterrupted = new AtomicBoolean(false);
+        HedgedRunPoint runPoint = newRunPoint(new Runnable() {
+            @Override
+            public void run() {
+                if (callCount.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+                    } catch (InterruptedException e) {
+                        isPrimaryInterrupted.set(true);
+                    }
+                }
+            }
+        });
+
+        // 主副本在当前线程运行，被对冲副本中断后返回
+        runPoint.run();
+
+        assertTrue(notifiedLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(isPrimaryInterrupted.get());
+        assertEquals(2, callCount.get());
+        assertEquals(1, completeCount.get());
+        assertTrue(failureList.isEmpty());
+        awaitHedgeReleased();
+    }
+
+    @Test
+    public void bothAttemptsFailReportsOneFailure() throws Exception {
+        final IllegalStateException primaryFailure = new IllegalStateException("primary");
+        HedgedRunPoint runPoint = newRunPoint(new Runnable() {
+            @Override
+            public void run() {
+                if (callCount.incrementAndGet() == 1) {
+                    sleepUninterruptibly(100);
+                    throw primaryFailure;
+                }
+                throw new IllegalStateException("hedge");
+            }
+        });
+
+        runPoint.run();
+
+        assertTrue(notifiedLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, callCount.get());
+        assertEquals(0, completeCount.get());
+        // 对冲副本先失败，主副本还在运行，最后失败的主副本通知任务组
+        assertEquals(1, failureList.size());
+        assertSame(primaryFailure, failureList.get(0));
+        awaitHedgeReleased();
+    }
+
+    @Test
+    public void primaryFailureWaitsForQueuedHedge() throws Exception {
+        final ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        try {
+            // 占满线程池后空出一个队列位置，对冲副本只能排队
+            saturate(pool, releaseLatch);
+            pool.getQueue().poll();
+
+            HedgedRunPoint runPoint = newRunPoint(new Runnable() {
+                @Override
+                public void run() {
+                    if (callCount.incrementAndGet() == 1) {
+                        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+                        while (pool.getQueue().remainingCapacity() > 0 && System.nanoTime() < deadline) {
+                            sleepUninterruptibly(1);
+                        }
+                        throw new IllegalStateException("primary");
+                    }
+                }
+            });
+
+            runPoint.run();
+
+            // 主副本失败时对冲副本还在排队，不能通知任务组失败
+            assertEquals(1, callCount.get());
+            assertEquals(0, completeCount.get());
+            assertTrue(failureList.isEmpty());
+            assertEquals(1, ThreadPoolExecutor.getHedgeCount());
+        } finally {
+            releaseLatch.countDown();
+        }
+
+        // 对冲副本运行成功
+        assertTrue(notifiedLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, callCount.get());
+        assertEquals(1, completeCount.get());
+        assertTrue(failureList.isEmpty());
+        awaitHedgeReleased();
+    }
+
+    @Test
+    public void noHedgeWhenBudgetUsedUp() throws Exception {
+        ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        int acquiredCount = 0;
+        while (pool.tryAcquireHedge()) {
+            acquiredCount++;
+        }
+        try {
+            HedgedRunPoint runPoint = newRunPoint(new Runnable() {
+                @Override
+                public void run() {
+                    callCount.incrementAndGet();
+                    sleepUninterruptibly(100);
+                }
+            });
+
+            runPoint.run();
+
+            assertEquals(1, callCount.get());
+            assertEquals(1, completeCount.get());
+            assertTrue(failureList.isEmpty());
+        } finally {
+            for (int i = 0; i < acquiredCount; i++) {
+                ThreadPoolExecutor.releaseHedge();
+            }
+        }
+        assertEquals(0, ThreadPoolExecutor.getHedgeCount());
+    }
+
+    private HedgedRunPoint newRunPoint(Runnable runnable) {
+        HedgedRunPoint runPoint = new HedgedRunPoint("hedged", runnable, hedgePolicy);
+        runPoint.setId(1);
+        runPoint.setOnRunnableCompleteListener(listener);
+        return runPoint;
+    }
+
+    /**
+     * 等待对冲副本归还预算，对冲副本在通知任务组之后才归还
+     */
+    private static void awaitHedgeReleased() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (ThreadPoolExecutor.getHedgeCount() != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, ThreadPoolExecutor.getHedgeCount());
+    }
+
+    private static void sleepUninterruptibly(long millis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long remainingNanos;
+        while ((remainingNanos = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remainingNanos);
+            } catch (InterruptedException e) {
+                // 主副本输掉时会被中断，这里模拟不响应中断的任务
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.hjf.thread;
+
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link IntQueue} 环形数组的回绕、扩容
+ */
+public class IntQueueTest {
+
+    @Test
+    public void pollInPushOrder() {
+        IntQueue queue = new IntQueue(4);
+        for (int i = 0; i < 3; i++) {
+            queue.push(i);
+        }
+        assertEquals(3, queue.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, queue.peek());
+            assertEquals(i, queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void wrapAroundWithoutGrowing() {
+        IntQueue queue = new IntQueue(4);
+        int next = 0;
+        int expected = 0;
+        // 队首不断后移，写入位置回绕到数组开头
+        for (int round = 0; round < 10; round++) {
+            queue.push(next++);
+            queue.push(next++);
+            assertEquals(expected++, queue.poll());
+            assertEquals(expected++, queue.poll());
+        }
+        assertEquals(4, queue.capacity());
+    }
+
+    @Test
+    public void growWhenFullAfterWrapAround() {
+        IntQueue queue = new IntQueue(4);
+        queue.push(0);
+        queue.push(1);
+        queue.push(2);
+        queue.poll();
+        queue.poll();
+        // 队首在数组中间时写满，扩容后保持顺序
+        for (int i = 3; i < 100; i++) {
+            queue.push(i);
+        }
+        assertEquals(98, queue.size());
+        assertTrue(queue.capacity() >= 98);
+        for (int i = 2; i < 100; i++) {
+            assertEquals(i, queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void clearReleasesGrownArray() {
+        IntQueue queue = new IntQueue(4);
+        for (int i = 0; i < 100; i++) {
+            queue.push(i);
+        }
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertEquals(4, queue.capacity());
+        queue.push(7);
+        assertEquals(7, queue.poll());
+    }
+
+    @Test
+    public void pollEmptyQueueThrows() {
+        IntQueue queue = new IntQueue(4);
+        try {
+            queue.poll();
+            fail("poll on an empty IntQueue should throw.");
+        } catch (NoSuchElementException e) {
+            // 预期异常
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.hjf.thread;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hjf.thread.ThreadPoolTestUtil.await;
+import static org.hjf.thread.ThreadPoolTestUtil.noop;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link MeshFuture} 失败传递、取消、回调异常
+ */
+public class MeshFutureTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private static final int CHAIN_LENGTH = 4;
+
+    /**
+     * 工作线程中未捕获的异常
+     */
+    private final List<Throwable> uncaughtList = Collections.synchronizedList(new ArrayList<Throwable>());
+
+    private Thread.UncaughtExceptionHandler defaultHandler;
+
+    @Before
+    public void setUp() {
+        defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                uncaughtList.add(e);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+    }
+
+    @Test
+    public void failureFromAnyNodeCompletesFuture() throws Exception {
+        for (int failIndex = 0; failIndex < CHAIN_LENGTH; failIndex++) {
+            final AtomicInteger ranCount = new AtomicInteger();
+            final IllegalStateException failure = new IllegalStateException("fail " + failIndex);
+            MeshTask meshTask = new MeshTask();
+            for (int i = 0; i < CHAIN_LENGTH; i++) {
+                final boolean isFail = i == failIndex;
+                Runnable runnable = new Runnable() {
+                    @Override
+                    public void run() {
+                        ranCount.incrementAndGet();
+                        if (isFail) {
+                            throw failure;
+                        }
+                    }
+                };
+                if (i == 0) {
+                    meshTask.addRunnable("n0", runnable);
+                } else {
+                    meshTask.addRunnable("n" + i, runnable, "n" + (i - 1));
+                }
+            }
+
+            MeshFuture future = meshTask.execute();
+            try {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                fail("MeshTask should fail at node " + failIndex + ".");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+            assertTrue(future.isDone());
+            assertFalse(future.isCancelled());
+            // 失败节点之后的节点不再运行
+            assertEquals(failIndex + 1, ranCount.get());
+        }
+    }
+
+    @Test
+    public void cancelStopsQueuedNodes() throws Exception {
+        ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        int siblingCount = (pool.getMaximumPoolSize() + pool.getQueue().remainingCapacity()) * 2;
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final AtomicInteger startedCount = new AtomicInteger();
+        Runnable blocker = new Runnable() {
+            @Override
+            public void run() {
+                startedCount.incrementAndGet();
+                try {
+                    releaseLatch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        MeshTask meshTask = new MeshTask();
+        String[] siblingNames = new String[siblingCount];
+        for (int i = 0; i < siblingCount; i++) {
+            siblingNames[i] = "s" + i;
+            meshTask.addRunnable(siblingNames[i], blocker);
+        }
+        meshTask.addRunnable("after", blocker, siblingNames);
+        MeshFuture future = meshTask.execute();
+
+        // 部分节点在运行，其余在线程池队列或就绪队列中
+        Thread.sleep(100);
+        int startedBeforeCancel = startedCount.get();
+        assertTrue(startedBeforeCancel < siblingCount);
+        assertTrue(future.cancel(false));
+        assertFalse(future.cancel(false));
+        releaseLatch.countDown();
+
+        Thread.sleep(100);
+        assertEquals(startedBeforeCancel, startedCount.get());
+        assertTrue(future.isDone());
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void cancelledFutureThrowsCancellationException() throws Exception {
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        MeshFuture future = new MeshTask()
+                .addRunnable("A", await(releaseLatch))
+                .execute();
+        final List<Throwable> failureList = new ArrayList<>();
+        future.addOnCompleteListener(new OnMeshCompleteListener() {
+            @Override
+            public void onComplete() {
+                fail("Cancelled MeshTask should not complete.");
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable throwable) {
+                failureList.add(throwable);
+            }
+        });
+        future.cancel(true);
+        releaseLatch.countDown();
+
+        try {
+            future.get();
+            fail("get() should throw CancellationException.");
+        } catch (CancellationException e) {
+            // 预期异常
+        }
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("get(timeout) should throw CancellationException.");
+        } catch (CancellationException e) {
+            // 预期异常
+        }
+        assertEquals(1, failureList.size());
+        assertTrue(failureList.get(0) instanceof CancellationException);
+    }
+
+    @Test
+    public void listenerExceptionIsSwallowed() throws Exception {
+        CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch notifiedLatch = new CountDownLatch(1);
+        MeshFuture future = new MeshTask()
+                .addRunnable("A", await(startLatch))
+                .addRunnable("B", noop(), "A")
+                .execute();
+        future.addOnCompleteListener(throwingListener());
+        future.addOnCompleteListener(new OnMeshCompleteListener() {
+            @Override
+            public void onComplete() {
+                notifiedLatch.countDown();
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable throwable) {
+            }
+        });
+        // 回调都添加后再完成，回调在线程池的工作线程中执行
+        startLatch.countDown();
+
+        future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        // 前一个回调抛出异常不影响后面的回调
+        assertTrue(notifiedLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // 已完成时在当前线程回调，异常也不抛给调用方
+        future.addOnCompleteListener(throwingListener());
+
+        // 回调异常没有抛给线程池的工作线程，之后的任务正常运行
+        new MeshTask().addRunnable("C", noop()).execute().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(uncaughtList.isEmpty());
+    }
+
+    @Test
+    public void runPointListenerExceptionIsSwallowed() {
+        OnRunnableCompleteListener throwingListener = new OnRunnableCompleteListener() {
+            @Override
+            public void onRunnableCompleteListener(int runnableId) {
+                throw new IllegalStateException("complete listener");
+            }
+
+            @Override
+            public void onRunnableFailedListener(int runnableId, Throwable throwable) {
+                throw new IllegalStateException("failed listener");
+            }
+        };
+
+        RunPoint completePoint = new RunPoint("complete", noop());
+        completePoint.setOnRunnableCompleteListener(throwingListener);
+        completePoint.run();
+
+        RunPoint failPoint = new RunPoint("fail", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("fail");
+            }
+        });
+        failPoint.setOnRunnableCompleteListener(throwingListener);
+        failPoint.run();
+    }
+
+    private static OnMeshCompleteListener throwingListener() {
+        return new OnMeshCompleteListener() {
+            @Override
+            public void onComplete() {
+                throw new IllegalStateException("listener");
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable throwable) {
+                throw new IllegalStateException("listener");
+            }
+        };
+    }
+}
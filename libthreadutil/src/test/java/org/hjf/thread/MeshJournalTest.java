@@ -0,0 +1,166 @@
+package org.hjf.thread;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link MeshJournal} 断点记录的读写、恢复、校验
+ */
+public class MeshJournalTest {
+
+    private static final int NODE_COUNT = 4;
+    private static final long FINGERPRINT = 0x1234L;
+
+    /**
+     * 头部长度：int 魔数，int 节点数，long 指纹
+     */
+    private static final int HEADER_LENGTH = 16;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("MeshJournalTest", ".journal");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        MeshJournal.awaitPendingWrite();
+        file.delete();
+    }
+
+    @Test
+    public void resumeReadsCompletedRecords() {
+        MeshJournal journal = new MeshJournal(file);
+        journal.open(NODE_COUNT, FINGERPRINT);
+        journal.append(1, new byte[]{1, 2, 3});
+        journal.append(2, null);
+        journal.finish(false);
+
+        MeshJournal resumed = new MeshJournal(file);
+        resumed.open(NODE_COUNT, FINGERPRINT);
+        assertTrue(resumed.isCompleted(1));
+        assertTrue(resumed.isCompleted(2));
+        assertFalse(resumed.isCompleted(3));
+        assertArrayEquals(new byte[]{1, 2, 3}, resumed.takeOutput(1));
+        assertNull(resumed.takeOutput(2));
+    }
+
+    @Test
+    public void recordsAreFlushedBeforeBatchIsFull() throws InterruptedException {
+        MeshJournal journal = new MeshJournal(file);
+        journal.open(NODE_COUNT, FINGERPRINT);
+        journal.append(1, null);
+
+        // 定时写入，不用等攒够一批或任务组结束
+        long deadline = System.currentTimeMillis() + 5000;
+        while (file.length() == HEADER_LENGTH && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(HEADER_LENGTH + 8, file.length());
+        journal.finish(false);
+    }
+
+    @Test
+    public void truncatedTailIsDiscarded() throws IOException {
+        MeshJournal journal = new MeshJournal(file);
+        journal.open(NODE_COUNT, FINGERPRINT);
+        journal.append(1, new byte[]{7});
+        journal.finish(false);
+        MeshJournal.awaitPendingWrite();
+        long validLength = file.length();
+
+        // 模拟进程被杀时写了一半的记录
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file, true));
+        output.writeInt(2);
+        output.writeInt(10);
+        output.write(new byte[]{1, 2});
+        output.close();
+
+        MeshJournal resumed = new MeshJournal(file);
+        resumed.open(NODE_COUNT, FINGERPRINT);
+        assertTrue(resumed.isCompleted(1));
+        assertFalse(resumed.isCompleted(2));
+        assertEquals(validLength, file.length());
+
+        // 截掉后继续追加的记录可以正常读取
+        resumed.append(2, null);
+        resumed.finish(false);
+        MeshJournal again = new MeshJournal(file);
+        again.open(NODE_COUNT, FINGERPRINT);
+        assertTrue(again.isCompleted(1));
+        assertTrue(again.isCompleted(2));
+    }
+
+    @Test
+    public void garbageLengthInTailIsDiscarded() throws IOException {
+        MeshJournal journal = new MeshJournal(file);
+        journal.open(NODE_COUNT, FINGERPRINT);
+        journal.append(1, new byte[]{7});
+        journal.finish(false);
+        MeshJournal.awaitPendingWrite();
+        long validLength = file.length();
+
+        // 断电时写坏的记录，长度远超文件剩余字节数
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file, true));
+        output.writeInt(2);
+        output.writeInt(Integer.MAX_VALUE - 8);
+        output.write(new byte[]{1, 2, 3, 4});
+        output.close();
+
+        MeshJournal resumed = new MeshJournal(file);
+        resumed.open(NODE_COUNT, FINGERPRINT);
+        assertTrue(resumed.isCompleted(1));
+        assertFalse(resumed.isCompleted(2));
+        assertEquals(validLength, file.length());
+        resumed.finish(false);
+    }
+
+    @Test
+    public void fingerprintMismatchDiscardsJournal() {
+        MeshJournal journal = new MeshJournal(file);
+        journal.open(NODE_COUNT, FINGERPRINT);
+        journal.append(1, null);
+        journal.finish(false);
+
+        MeshJournal other = new MeshJournal(file);
+        other.open(NODE_COUNT, FINGERPRINT + 1);
+        assertFalse(other.isCompleted(1));
+        assertEquals(HEADER_LENGTH, file.length());
+    }
+
+    @Test
+    public void nodeCountMismatchDiscardsJournal() {
+        MeshJournal journal = new MeshJournal(file);
+        journal.open(NODE_COUNT, FINGERPRINT);
+        journal.append(1, null);
+        journal.finish(false);
+
+        MeshJournal other = new MeshJournal(file);
+        other.open(NODE_COUNT + 1, FINGERPRINT);
+        assertFalse(other.isCompleted(1));
+    }
+
+    @Test
+    public void successDeletesJournal() {
+        MeshJournal journal = new MeshJournal(file);
+        journal.open(NODE_COUNT, FINGERPRINT);
+        journal.append(1, null);
+        journal.finish(true);
+        MeshJournal.awaitPendingWrite();
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,126 @@
+package org.hjf.thread;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link MeshTask#setCheckpointFile(File)} 断点恢复
+ */
+public class MeshTaskCheckpointTest {
+
+    private File file;
+
+    private final List<String> ranList = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("MeshTaskCheckpointTest", ".journal");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        MeshJournal.awaitPendingWrite();
+        file.delete();
+    }
+
+    @Test
+    public void resumeRunsOnlyUncompletedNodes() throws Exception {
+        MeshTask failed = new MeshTask().setCheckpointFile(file)
+                .addRunnable("A", record("A"))
+                .addRunnable("B", failing(), "A");
+        executeExpectingFailure(failed);
+
+        ranList.clear();
+        new MeshTask().setCheckpointFile(file)
+                .addRunnable("A", record("A"))
+                .addRunnable("B", record("B"), "A")
+                .executeAndWait();
+        assertEquals(Collections.singletonList("B"), ranList);
+
+        MeshJournal.awaitPendingWrite();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void differentGraphWithSameNodeCountDiscardsJournal() throws Exception {
+        MeshTask failed = new MeshTask().setCheckpointFile(file)
+                .addRunnable("A", record("A"))
+                .addRunnable("B", failing(), "A");
+        executeExpectingFailure(failed);
+
+        ranList.clear();
+        new MeshTask().setCheckpointFile(file)
+                .addRunnable("UPLOAD", record("UPLOAD"))
+                .addRunnable("OTHER", record("OTHER"))
+                .executeAndWait();
+        Collections.sort(ranList);
+        assertEquals(Arrays.asList("OTHER", "UPLOAD"), ranList);
+    }
+
+    @Test
+    public void brokenJournalDoesNotFailGraph() throws Exception {
+        MeshTask failed = new MeshTask().setCheckpointFile(file)
+                .addRunnable("A", record("A"))
+                .addRunnable("B", failing(), "A");
+        executeExpectingFailure(failed);
+        MeshJournal.awaitPendingWrite();
+
+        // 断电时写坏的记录
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file, true));
+        output.writeInt(2);
+        output.writeInt(Integer.MAX_VALUE);
+        output.close();
+
+        for (int i = 0; i < 2; i++) {
+            ranList.clear();
+            new MeshTask().setCheckpointFile(file)
+                    .addRunnable("A", record("A"))
+                    .addRunnable("B", record("B"), "A")
+                    .executeAndWait();
+            assertEquals(i == 0 ? Collections.singletonList("B") : Arrays.asList("A", "B"), ranList);
+        }
+    }
+
+    private void executeExpectingFailure(MeshTask meshTask) throws InterruptedException {
+        try {
+            meshTask.executeAndWait();
+            fail("MeshTask should fail.");
+        } catch (ExecutionException e) {
+            // 预期失败，保留断点记录
+        }
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ranList.add(name);
+            }
+        };
+    }
+
+    private static Runnable failing() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("fail");
+            }
+        };
+    }
+}
@@ -0,0 +1,180 @@
+package org.hjf.thread;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hjf.thread.ThreadPoolTestUtil.saturate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link MeshTask} 就绪队列按线程池剩余容量分发
+ */
+public class MeshTaskDispatchTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    @Test
+    public void moreSiblingsThanPoolCapacity() throws Exception {
+        ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        int poolCapacity = pool.getMaximumPoolSize() + pool.getQueue().remainingCapacity();
+        runSiblings(Math.max(40, poolCapacity * 2), 1);
+        runSiblings(100000, 0);
+    }
+
+    private static void runSiblings(int siblingCount, final long sleepMillis) throws Exception {
+        final AtomicInteger ranCount = new AtomicInteger();
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                ranCount.incrementAndGet();
+                if (sleepMillis > 0) {
+                    try {
+                        Thread.sleep(sleepMillis);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+        MeshTask meshTask = new MeshTask();
+        for (int i = 0; i < siblingCount; i++) {
+            meshTask.addRunnable("n" + i, runnable);
+        }
+        meshTask.addRunnable("sink", runnable, "n0", "n" + (siblingCount - 1));
+        meshTask.execute().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(siblingCount + 1, ranCount.get());
+    }
+
+    @Test
+    public void stalledGraphRunsOnWorkerThread() throws Exception {
+        final ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        final CountDownLatch saturatedLatch = new CountDownLatch(1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final Set<Thread> ranThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        Future<Thread> worker = pool.submit(new Callable<Thread>() {
+            @Override
+            public Thread call() throws Exception {
+                try {
+                    saturatedLatch.await();
+                    MeshFuture future = threeNodeGraph(ranThreads).execute();
+                    // 线程池已满，就绪节点在当前工作线程中运行完
+                    assertTrue(future.isDone());
+                    future.get();
+                    return Thread.currentThread();
+                } finally {
+                    releaseLatch.countDown();
+                }
+            }
+        });
+        saturate(pool, releaseLatch);
+        saturatedLatch.countDown();
+
+        Thread workerThread = worker.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, ranThreads.size());
+        assertSame(workerThread, ranThreads.iterator().next());
+    }
+
+    @Test
+    public void stalledGraphRetriesFromOtherThread() throws Exception {
+        ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        Set<Thread> ranThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        MeshFuture future;
+        try {
+            saturate(pool, releaseLatch);
+            future = threeNodeGraph(ranThreads).execute();
+            // 非工作线程不会直接运行节点，线程池一直满着时任务组等待
+            Thread.sleep(100);
+            assertFalse(future.isDone());
+            assertTrue(ranThreads.isEmpty());
+        } finally {
+            releaseLatch.countDown();
+        }
+
+        // 线程池空出后重试分发
+        future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertFalse(ranThreads.contains(Thread.currentThread()));
+        assertFalse(ranThreads.isEmpty());
+    }
+
+    private static MeshTask threeNodeGraph(final Set<Thread> ranThreads) {
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                ranThreads.add(Thread.currentThread());
+            }
+        };
+        return new MeshTask()
+                .addRunnable("A", runnable)
+                .addRunnable("B", runnable)
+                .addRunnable("C", runnable, "A", "B");
+    }
+
+    @Test
+    public void failureCancelsReadyNodes() throws Exception {
+        ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        int poolCapacity = pool.getMaximumPoolSize() + pool.getQueue().remainingCapacity();
+        int siblingCount = poolCapacity * 4;
+        final AtomicInteger ranCount = new AtomicInteger();
+        MeshTask meshTask = new MeshTask().addRunnable("fail", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("fail");
+            }
+        });
+        for (int i = 0; i < siblingCount; i++) {
+            meshTask.addRunnable("n" + i, new Runnable() {
+                @Override
+                public void run() {
+                    ranCount.incrementAndGet();
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+
+        try {
+            meshTask.execute().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("MeshTask should fail.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        // 还在就绪队列中的节点不会再提交运行
+        Thread.sleep(200);
+        int ranAfterFailure = ranCount.get();
+        assertTrue("ran " + ranAfterFailure, ranAfterFailure <= poolCapacity);
+        Thread.sleep(100);
+        assertEquals(ranAfterFailure, ranCount.get());
+    }
+
+    @Test
+    public void namesAreReleasedAfterExecute() throws Exception {
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        RunPoint runPoint = new RunPoint("A", ThreadPoolTestUtil.await(releaseLatch));
+        MeshTask meshTask = new MeshTask();
+        int id = meshTask.addRunPoint(runPoint, new String[0]);
+        assertEquals("A", runPoint.getName());
+
+        MeshFuture future = meshTask.execute();
+        // 执行后节点只保留 id
+        assertEquals("#" + id, runPoint.getName());
+        releaseLatch.countDown();
+        future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
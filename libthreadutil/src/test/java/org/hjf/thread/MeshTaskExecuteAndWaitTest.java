@@ -0,0 +1,147 @@
+package org.hjf.thread;
+
+import android.support.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hjf.thread.ThreadPoolTestUtil.await;
+import static org.hjf.thread.ThreadPoolTestUtil.noop;
+import static org.hjf.thread.ThreadPoolTestUtil.releaseCompensation;
+import static org.hjf.thread.ThreadPoolTestUtil.useUpCompensation;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link MeshTask#executeAndWait()} 嵌套执行、线程补偿
+ */
+public class MeshTaskExecuteAndWaitTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private static final int INNER_NODE_COUNT = 3;
+
+    @Test
+    public void executeAndWaitOnRunningGraphKeepsItRunning() throws Exception {
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final MeshTask meshTask = new MeshTask()
+                .addRunnable("A", await(releaseLatch))
+                .addRunnable("B", noop(), "A");
+        MeshFuture future = meshTask.execute();
+
+        ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        int compensateCount = useUpCompensation(pool);
+        try {
+            Future<Void> again = pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    meshTask.executeAndWait();
+                    return null;
+                }
+            });
+            try {
+                again.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                fail("executeAndWait on a running MeshTask should throw.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RuntimeException);
+            }
+        } finally {
+            releaseCompensation(pool, compensateCount);
+        }
+
+        // 重复执行失败后，原任务组仍由线程池继续运行
+        releaseLatch.countDown();
+        future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void nestedGraphsOnWorkersMoreThanPoolThreads() throws Exception {
+        ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        int corePoolSize = pool.getCorePoolSize();
+        int maximumPoolSize = pool.getMaximumPoolSize();
+        int outerCount = maximumPoolSize * 2;
+        final AtomicInteger innerCount = new AtomicInteger();
+
+        MeshTask outer = new MeshTask();
+        for (int i = 0; i < outerCount; i++) {
+            outer.addRunnable("outer" + i, new Runnable() {
+                @Override
+                public void run() {
+                    executeInnerGraph(innerCount, null);
+                }
+            });
+        }
+        outer.execute().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertEquals(outerCount * INNER_NODE_COUNT, innerCount.get());
+        // 补偿的线程都已收回
+        assertEquals(corePoolSize, pool.getCorePoolSize());
+        assertEquals(maximumPoolSize, pool.getMaximumPoolSize());
+    }
+
+    @Test
+    public void nestedGraphRunsOnCallerWhenCompensationCapReached() throws Exception {
+        ThreadPoolExecutor pool = ThreadPoolExecutor.getInstance();
+        int corePoolSize = pool.getCorePoolSize();
+        int maximumPoolSize = pool.getMaximumPoolSize();
+        int outerCount = maximumPoolSize * 2;
+        final AtomicInteger innerCount = new AtomicInteger();
+        final AtomicInteger otherThreadCount = new AtomicInteger();
+
+        int compensateCount = useUpCompensation(pool);
+        try {
+            MeshTask outer = new MeshTask();
+            for (int i = 0; i < outerCount; i++) {
+                outer.addRunnable("outer" + i, new Runnable() {
+                    @Override
+                    public void run() {
+                        executeInnerGraph(innerCount, otherThreadCount);
+                    }
+                });
+            }
+            outer.execute().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            releaseCompensation(pool, compensateCount);
+        }
+
+        assertEquals(outerCount * INNER_NODE_COUNT, innerCount.get());
+        // 无法补偿时内层节点都在调用 executeAndWait 的线程中运行
+        assertEquals(0, otherThreadCount.get());
+        assertEquals(corePoolSize, pool.getCorePoolSize());
+        assertEquals(maximumPoolSize, pool.getMaximumPoolSize());
+    }
+
+    /**
+     * 在当前工作线程中执行并等待内层任务组
+     *
+     * @param otherThreadCount 不为 null 时记录不在当前线程中运行的内层节点数
+     */
+    private static void executeInnerGraph(final AtomicInteger innerCount, @Nullable final AtomicInteger otherThreadCount) {
+        final Thread callerThread = Thread.currentThread();
+        Runnable inner = new Runnable() {
+            @Override
+            public void run() {
+                innerCount.incrementAndGet();
+                if (otherThreadCount != null && Thread.currentThread() != callerThread) {
+                    otherThreadCount.incrementAndGet();
+                }
+            }
+        };
+        MeshTask meshTask = new MeshTask();
+        for (int i = 0; i < INNER_NODE_COUNT; i++) {
+            meshTask.addRunnable("inner" + i, inner);
+        }
+        try {
+            meshTask.executeAndWait();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
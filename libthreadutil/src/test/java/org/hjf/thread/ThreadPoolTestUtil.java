@@ -0,0 +1,71 @@
+package org.hjf.thread;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 测试中占满线程池、补偿线程的工具方法
+ */
+final class ThreadPoolTestUtil {
+
+    private ThreadPoolTestUtil() {
+    }
+
+    /**
+     * 提交阻塞任务直到线程池没有剩余容量（线程数已达上限且任务队列已满）
+     * 空闲线程会取走队列中的任务，所以要等所有线程都在运行后再确认队列已满
+     *
+     * @param releaseLatch 阻塞任务等待的信号，countDown 后所有阻塞任务结束
+     * @return 提交的阻塞任务数
+     */
+    static int saturate(ThreadPoolExecutor pool, CountDownLatch releaseLatch) throws InterruptedException {
+        int count = 0;
+        do {
+            while (pool.hasCapacity()) {
+                pool.execute(await(releaseLatch));
+                count++;
+            }
+            Thread.sleep(10);
+        } while (pool.hasCapacity());
+        return count;
+    }
+
+    /**
+     * 占满线程池的补偿线程数
+     *
+     * @return 占用的补偿线程数，用完后通过 {@link #releaseCompensation(ThreadPoolExecutor, int)} 归还
+     */
+    static int useUpCompensation(ThreadPoolExecutor pool) {
+        int count = 0;
+        while (pool.tryCompensate()) {
+            count++;
+        }
+        return count;
+    }
+
+    static void releaseCompensation(ThreadPoolExecutor pool, int count) {
+        for (int i = 0; i < count; i++) {
+            pool.releaseCompensate();
+        }
+    }
+
+    static Runnable noop() {
+        return new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+    }
+
+    static Runnable await(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+}